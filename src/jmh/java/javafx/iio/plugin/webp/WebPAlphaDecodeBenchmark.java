@@ -0,0 +1,71 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.ALPHChunk;
+import javafx.iio.plugin.webp.chunks.Chunk;
+import javafx.iio.plugin.webp.chunks.VP8Chunk;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lossy images with a separate ALPH chunk. {@code view} chunks share the container bytes and are decoded in place,
+ * {@code array} chunks are copied together before every decode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPAlphaDecodeBenchmark {
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    @Param({"view", "array"})
+    public String chunks;
+
+    private ALPHChunk alphChunk;
+    private VP8Chunk vp8Chunk;
+    private int width;
+    private ByteBuffer output;
+
+    @Setup
+    public void setup() throws IOException {
+        width = size;
+        int height = size * 3 / 4;
+        byte[] data = WebPFixtures.create("alpha", width, height);
+        for (Chunk chunk : WebPFactory.index(new ByteArrayInputStream(data)).loadImageChunks()) {
+            boolean copy = chunks.equals("array");
+            if (chunk instanceof ALPHChunk loaded) {
+                alphChunk = copy ? new ALPHChunk(loaded.getRawData()) : loaded;
+            } else if (chunk instanceof VP8Chunk loaded) {
+                vp8Chunk = copy ? new VP8Chunk(loaded.getRawData()) : loaded;
+            }
+        }
+        output = ByteBuffer.allocateDirect(width * height * 4);
+    }
+
+    @Benchmark
+    public byte[] decodeRGBA() throws IOException {
+        return WebPFactory.decodeRGBA(alphChunk, vp8Chunk, new int[2]);
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAInto() throws IOException {
+        WebPFactory.decodeRGBAInto(alphChunk, vp8Chunk, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeARGBInto() throws IOException {
+        WebPFactory.decodeARGBInto(alphChunk, vp8Chunk, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeBGRAInto() throws IOException {
+        WebPFactory.decodeBGRAInto(alphChunk, vp8Chunk, output, width * 4);
+        return output;
+    }
+}
@@ -0,0 +1,128 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.BitstreamChunk;
+import javafx.iio.plugin.webp.chunks.Chunk;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPDecodeBenchmark {
+
+    @Param({"lossy", "lossless"})
+    public String kind;
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private BitstreamChunk chunk;
+    private int width;
+    private int height;
+    private ByteBuffer output;
+    private WebPDecodeOptions scaled;
+    private WebPDecodeOptions advanced;
+    private WebPDecodeOptions threaded;
+    private WebPBufferPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        width = size;
+        height = size * 3 / 4;
+        byte[] data = WebPFixtures.create(kind, width, height);
+        for (Chunk loaded : WebPFactory.index(new ByteArrayInputStream(data)).loadImageChunks()) {
+            if (loaded instanceof BitstreamChunk bitstreamChunk) {
+                chunk = bitstreamChunk;
+            }
+        }
+        output = ByteBuffer.allocateDirect(width * height * 4);
+        scaled = new WebPDecodeOptions().setScaledSize(width / 4, height / 4);
+        advanced = new WebPDecodeOptions();
+        threaded = new WebPDecodeOptions().setMultiThreaded(true);
+        pool = new WebPBufferPool(Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public byte[] decodeRGBA() {
+        return WebPFactory.decodeRGBA(chunk, new int[2]);
+    }
+
+    @Benchmark
+    public byte[] decodeARGB() {
+        return WebPFactory.decodeARGB(chunk, new int[2]);
+    }
+
+    @Benchmark
+    public int[] decodeBGRA() {
+        return WebPFactory.decodeBGRA(chunk, new int[2]);
+    }
+
+    @Benchmark
+    public byte[] decodeRGB() {
+        return WebPFactory.decodeRGB(chunk, new int[2]);
+    }
+
+    @Benchmark
+    public byte[] decodeBGR() {
+        return WebPFactory.decodeBGR(chunk, new int[2]);
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAInto() throws IOException {
+        WebPFactory.decodeRGBAInto(chunk, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeARGBInto() throws IOException {
+        WebPFactory.decodeARGBInto(chunk, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeBGRAInto() throws IOException {
+        WebPFactory.decodeBGRAInto(chunk, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBInto() throws IOException {
+        WebPFactory.decodeRGBInto(chunk, output, width * 3);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeBGRInto() throws IOException {
+        WebPFactory.decodeBGRInto(chunk, output, width * 3);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAIntoScaled() throws IOException {
+        WebPFactory.decodeRGBAInto(chunk, scaled, output, scaled.getScaledWidth() * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAIntoAdvanced() throws IOException {
+        WebPFactory.decodeRGBAInto(chunk, advanced, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAIntoThreaded() throws IOException {
+        WebPFactory.decodeRGBAInto(chunk, threaded, output, width * 4);
+        return output;
+    }
+
+    @Benchmark
+    public ByteBuffer decodeRGBAPooled() throws IOException {
+        ByteBuffer pixels = WebPFactory.decodeRGBA(chunk, pool, new int[2]);
+        pool.release(pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,59 @@
+package javafx.iio.plugin.webp;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPDemuxBenchmark {
+
+    @Param({"lossy", "lossless", "alpha", "animated"})
+    public String kind;
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private byte[] data;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        data = WebPFixtures.create(kind, size, size * 3 / 4);
+        file = Files.createTempFile("webp-bench", ".webp");
+        Files.write(file, data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Object demux() throws IOException {
+        return WebPFactory.demux(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public Object demuxFile() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return WebPFactory.demux(channel);
+        }
+    }
+
+    @Benchmark
+    public void index(Blackhole blackhole) throws IOException {
+        WebPIndex index = WebPFactory.index(new ByteArrayInputStream(data));
+        blackhole.consume(index.getChunks());
+        for (int i = 0; index.getFrame(i) != null; i++) {
+            blackhole.consume(index.loadFrame(i));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package javafx.iio.plugin.webp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPEncodeBenchmark {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"80"})
+    public float quality;
+
+    @Param({"4"})
+    public int method;
+
+    private int width;
+    private int height;
+    private byte[] rgba;
+    private byte[] rgb;
+    private int[] bgra;
+    private WebPEncoderOptions options;
+    private WebPEncoderOptions multiThreadedOptions;
+
+    @Setup
+    public void setup() {
+        width = size;
+        height = size * 3 / 4;
+        rgba = WebPFixtures.rgba(width, height, 0, true);
+        rgb = WebPFixtures.rgb(width, height);
+        bgra = WebPFixtures.bgra(width, height, true);
+        options = new WebPEncoderOptions().setQuality(quality).setMethod(method);
+        multiThreadedOptions = new WebPEncoderOptions().setQuality(quality).setMethod(method).setMultiThreaded(true);
+    }
+
+    // RGB and BGR differ only in channel order, the same pixels are used for both
+
+    @Benchmark
+    public Object encodeLosslessBGRA() {
+        return WebPFactory.encodeLosslessBGRA(bgra, width, height, width);
+    }
+
+    @Benchmark
+    public Object encodeLosslessRGBA() {
+        return WebPFactory.encodeLosslessRGBA(rgba, width, height, width);
+    }
+
+    @Benchmark
+    public Object encodeLosslessRGB() {
+        return WebPFactory.encodeLosslessRGB(rgb, width, height, width);
+    }
+
+    @Benchmark
+    public Object encodeLosslessBGR() {
+        return WebPFactory.encodeLosslessBGR(rgb, width, height, width);
+    }
+
+    @Benchmark
+    public Object encodeBGRA() {
+        return WebPFactory.encodeBGRA(bgra, width, height, width, quality);
+    }
+
+    @Benchmark
+    public Object encodeRGBA() {
+        return WebPFactory.encodeRGBA(rgba, width, height, width, quality);
+    }
+
+    @Benchmark
+    public Object encodeRGB() {
+        return WebPFactory.encodeRGB(rgb, width, height, width, quality);
+    }
+
+    @Benchmark
+    public Object encodeBGR() {
+        return WebPFactory.encodeBGR(rgb, width, height, width, quality);
+    }
+
+    @Benchmark
+    public Object encodeRGBAOptions() throws IOException {
+        return WebPFactory.encodeRGBA(rgba, width, height, width, options);
+    }
+
+    @Benchmark
+    public Object encodeRGBAMultiThreaded() throws IOException {
+        return WebPFactory.encodeRGBA(rgba, width, height, width, multiThreadedOptions);
+    }
+}
@@ -0,0 +1,100 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generated benchmark inputs, encoded with the plugin itself so no binary fixtures have to be kept in the repository
+ */
+final class WebPFixtures {
+
+    static final int ANIMATION_FRAMES = 8;
+
+    private WebPFixtures() {
+    }
+
+    static byte[] create(String kind, int width, int height) throws IOException {
+        return switch (kind) {
+            case "lossy" -> write(new WebPChunk(WebPFactory.encodeRGBA(rgba(width, height, 0, false), width, height, width, 80)));
+            case "lossless" -> write(new WebPChunk(WebPFactory.encodeLosslessRGBA(rgba(width, height, 0, true), width, height, width)));
+            case "alpha" -> alpha(width, height);
+            case "animated" -> animated(width, height);
+            default -> throw new IllegalArgumentException("Unknown fixture: " + kind);
+        };
+    }
+
+    /**
+     * Gradients with some noise, so that both encoders have to do real work
+     */
+    static byte[] rgba(int width, int height, int seed, boolean alpha) {
+        byte[] rgba = new byte[width * height * 4];
+        int noise = seed * 0x9E3779B9;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                noise = noise * 1103515245 + 12345;
+                int i = (y * width + x) * 4;
+                rgba[i] = (byte) (x * 255 / width + seed * 16);
+                rgba[i + 1] = (byte) (y * 255 / height);
+                rgba[i + 2] = (byte) ((x ^ y) + (noise >>> 28));
+                rgba[i + 3] = alpha ? (byte) ((x + y) * 255 / (width + height)) : (byte) 0xFF;
+            }
+        }
+        return rgba;
+    }
+
+    static int[] bgra(int width, int height, boolean alpha) {
+        byte[] rgba = rgba(width, height, 0, alpha);
+        int[] bgra = new int[width * height];
+        for (int i = 0; i < bgra.length; i++) {
+            bgra[i] = (rgba[i * 4 + 3] & 0xFF) << 24 | (rgba[i * 4] & 0xFF) << 16 | (rgba[i * 4 + 1] & 0xFF) << 8 | rgba[i * 4 + 2] & 0xFF;
+        }
+        return bgra;
+    }
+
+    static byte[] rgb(int width, int height) {
+        byte[] rgba = rgba(width, height, 0, false);
+        byte[] rgb = new byte[width * height * 3];
+        for (int i = 0, j = 0; i < rgba.length; i += 4, j += 3) {
+            System.arraycopy(rgba, i, rgb, j, 3);
+        }
+        return rgb;
+    }
+
+    private static byte[] alpha(int width, int height) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        chunks.add(new VP8XChunk(VP8XChunk.FLAG_ALPH, width, height));
+        chunks.addAll(Arrays.asList(WebPFactory.encodeRGBA(rgba(width, height, 0, true), width, height, width, 80)));
+        return write(new WebPChunk(chunks.toArray(new Chunk[0])));
+    }
+
+    // Full first frame followed by half-size frames moving over the canvas, mixed lossy and lossless
+    private static byte[] animated(int width, int height) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        chunks.add(new VP8XChunk(VP8XChunk.FLAG_ANIM | VP8XChunk.FLAG_ALPH, width, height));
+        chunks.add(new ANIMChunk(0, 0));
+        for (int i = 0; i < ANIMATION_FRAMES; i++) {
+            int frameWidth = i == 0 ? width : width / 2;
+            int frameHeight = i == 0 ? height : height / 2;
+            byte[] rgba = rgba(frameWidth, frameHeight, i, i % 2 == 1);
+            Chunk[] subchunks = i % 3 == 2
+                    ? new Chunk[]{WebPFactory.encodeLosslessRGBA(rgba, frameWidth, frameHeight, frameWidth)}
+                    : WebPFactory.encodeRGBA(rgba, frameWidth, frameHeight, frameWidth, 80);
+            // Frame offsets are stored divided by 2
+            int x = i == 0 ? 0 : i * width / (4 * ANIMATION_FRAMES);
+            int y = i == 0 ? 0 : i * height / (4 * ANIMATION_FRAMES);
+            chunks.add(new ANMFChunk(x, y, frameWidth, frameHeight, 40, i % 2 == 0 ? ANMFChunk.FLAG_DISPOSE_TO_BACKGROUND : 0, subchunks));
+        }
+        return write(new WebPChunk(chunks.toArray(new Chunk[0])));
+    }
+
+    private static byte[] write(Chunk chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunk.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.IIOImageFrame;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end decoding through the IIO loader, animations are decoded frame by frame until the end
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPLoaderBenchmark {
+
+    @Param({"lossy", "lossless", "alpha", "animated"})
+    public String kind;
+
+    @Param({"256", "1024", "2048"})
+    public int size;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        data = WebPFixtures.create(kind, size, size * 3 / 4);
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) throws IOException {
+        decodeAll(blackhole, 0, 0, true);
+    }
+
+    @Benchmark
+    public void decodePremultiplied(Blackhole blackhole) throws IOException {
+        WebPLoader loader = new WebPLoader(new ByteArrayInputStream(data));
+        loader.setPremultipliedOutput(true);
+        decodeAll(blackhole, loader, 0, 0, true);
+    }
+
+    @Benchmark
+    public void decodeScaled(Blackhole blackhole) throws IOException {
+        decodeAll(blackhole, size / 4, size * 3 / 16, true);
+    }
+
+    @Benchmark
+    public void decodeScaledNonSmooth(Blackhole blackhole) throws IOException {
+        decodeAll(blackhole, size / 4, size * 3 / 16, false);
+    }
+
+    private void decodeAll(Blackhole blackhole, int width, int height, boolean smooth) throws IOException {
+        decodeAll(blackhole, new WebPLoader(new ByteArrayInputStream(data)), width, height, smooth);
+    }
+
+    private static void decodeAll(Blackhole blackhole, WebPLoader loader, int width, int height, boolean smooth) throws IOException {
+        IIOImageFrame frame;
+        for (int i = 0; (frame = loader.decode(i, width, height, true, smooth)) != null; i++) {
+            blackhole.consume(frame);
+        }
+    }
+}
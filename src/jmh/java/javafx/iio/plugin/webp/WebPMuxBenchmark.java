@@ -0,0 +1,52 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.WebPChunk;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebPMuxBenchmark {
+
+    @Param({"animated"})
+    public String kind;
+
+    @Param({"256", "1024"})
+    public int size;
+
+    private WebPChunk chunk;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        chunk = WebPFactory.demux(new ByteArrayInputStream(WebPFixtures.create(kind, size, size * 3 / 4)));
+        file = Files.createTempFile("webp-bench", ".webp");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        try (OutputStream out = new FileOutputStream(file.toFile())) {
+            chunk.write(out);
+        }
+    }
+
+    @Benchmark
+    public void mux() throws IOException {
+        try (WebPMuxer muxer = new WebPMuxer(new FileOutputStream(file.toFile()))) {
+            muxer.writeChunk(chunk);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package javafx.iio.plugin.webp;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import javafx.iio.plugin.webp.jna.WebPAnimDecoderOptions;
+import javafx.iio.plugin.webp.jna.WebPAnimInfo;
+import javafx.iio.plugin.webp.jna.WebPData;
+import javafx.iio.plugin.webp.jna.WebPDemux;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Animation backend on top of libwebpdemux's WebPAnimDecoder. Frames are composited natively (offsets, blending
+ * and disposal) into a single canvas owned by libwebp that is reused for every frame.
+ */
+final class WebPAnimDecoder implements Closeable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+    private final WebPAnimInfo info = new WebPAnimInfo();
+    private final PointerByReference canvas = new PointerByReference();
+    private final IntByReference timestamp = new IntByReference();
+    private final int colorspace;
+    private final boolean multiThreaded;
+    private int nextFrame;
+    private int previousTimestamp;
+    private int frameDuration;
+
+    static boolean isAvailable() {
+        return WebPDemux.getInstance() != null;
+    }
+
+    WebPAnimDecoder(WebPIndex index, int colorspace, boolean multiThreaded) throws IOException {
+        Objects.requireNonNull(index);
+        this.colorspace = colorspace;
+        this.multiThreaded = multiThreaded;
+        WebPDemux demux = WebPDemux.getInstance();
+        if (demux == null) throw new IOException("libwebpdemux is not available");
+
+        // WebPAnimDecoder does not copy input, it has to stay alive as long as the decoder
+        long length = index.getLength();
+        long start = WebPMetrics.start();
+        Memory data = new Memory(length);
+        byte[] buf = new byte[(int) Math.min(length, 64 * 1024)];
+        for (long position = 0; position < length; ) {
+            int count = (int) Math.min(buf.length, length - position);
+            index.getSource().readFully(position, buf, 0, count);
+            data.write(position, buf, 0, count);
+            position += count;
+        }
+        WebPMetrics.record(WebPPhase.READ, start, length, 0, length);
+
+        WebPAnimDecoderOptions options = new WebPAnimDecoderOptions();
+        if (demux.WebPAnimDecoderOptionsInitInternal(options, WebPDemux.WEBP_DEMUX_ABI_VERSION) == 0) {
+            throw new IOException("Incompatible libwebpdemux version");
+        }
+        options.use_threads = multiThreaded ? 1 : 0;
+        options.color_mode = colorspace;
+        WebPData webPData = new WebPData();
+        webPData.bytes = data;
+        webPData.size = length;
+        Pointer decoder = demux.WebPAnimDecoderNewInternal(webPData, options, WebPDemux.WEBP_DEMUX_ABI_VERSION);
+        if (decoder == null) throw new IOException("Unable to create animation decoder");
+
+        state = new State(demux, decoder, data);
+        cleanable = CLEANER.register(this, state);
+        if (demux.WebPAnimDecoderGetInfo(decoder, info) == 0) {
+            close();
+            throw new IOException("Unable to read animation info");
+        }
+    }
+
+    public int getColorspace() {
+        return colorspace;
+    }
+
+    public boolean isMultiThreaded() {
+        return multiThreaded;
+    }
+
+    public int getCanvasWidth() {
+        return info.canvas_width;
+    }
+
+    public int getCanvasHeight() {
+        return info.canvas_height;
+    }
+
+    public int getFrameCount() {
+        return info.frame_count;
+    }
+
+    public int getLoopCount() {
+        return info.loop_count;
+    }
+
+    /**
+     * Duration of the last decoded frame
+     */
+    public int getFrameDuration() {
+        return frameDuration;
+    }
+
+    /**
+     * Composites animation up to the requested frame and copies the canvas into {@code output},
+     * returns {@code false} if there is no such frame. Sequential access never re-decodes previous frames.
+     */
+    public boolean decodeFrame(int index, ByteBuffer output) throws IOException {
+        if (index < 0 || index >= info.frame_count) return false;
+        long canvasSize = (long) info.canvas_width * info.canvas_height * 4;
+        if (output.remaining() < canvasSize) throw new IllegalArgumentException("output buffer is too small");
+        WebPDemux demux = state.demux;
+        if (index < nextFrame) {
+            demux.WebPAnimDecoderReset(state.decoder);
+            nextFrame = 0;
+            previousTimestamp = 0;
+        }
+        while (nextFrame <= index) {
+            if (demux.WebPAnimDecoderGetNext(state.decoder, canvas, timestamp) == 0) {
+                throw new IOException("Unable to decode animation frame " + nextFrame);
+            }
+            frameDuration = timestamp.getValue() - previousTimestamp;
+            previousTimestamp = timestamp.getValue();
+            nextFrame++;
+        }
+        output.duplicate().put(canvas.getValue().getByteBuffer(0, canvasSize));
+        return true;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    private static final class State implements Runnable {
+        private final WebPDemux demux;
+        private final Pointer decoder;
+        private final Memory data;
+
+        State(WebPDemux demux, Pointer decoder, Memory data) {
+            this.demux = demux;
+            this.decoder = decoder;
+            this.data = data;
+        }
+
+        @Override
+        public void run() {
+            demux.WebPAnimDecoderDelete(decoder);
+            data.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.*;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static javafx.iio.plugin.webp.utils.WebPUtils.*;
+
+/**
+ * Animated WebP encoder. Frames are encoded in parallel on an {@link Executor} with at most {@code window} frames
+ * in flight and written in frame order as {@code ANMF} chunks through a {@link WebPMuxer}. RIFF size precedes the
+ * frames, so output to a {@link FileOutputStream} is written in a single pass and patched on close, other streams
+ * receive the encoded container on close. Closing the encoder closes the stream.
+ */
+public final class WebPAnimEncoder implements Closeable {
+
+    private final WebPMuxer muxer;
+    private final int width;
+    private final int height;
+    private final WebPEncoderOptions options;
+    private final Executor executor;
+    private final int window;
+    private final ArrayDeque<CompletableFuture<ANMFChunk>> pending = new ArrayDeque<>();
+    private int backgroundColor;
+    private int loopCount;
+    private int frameCount;
+    private long flagsPosition = -1;
+    private boolean alpha;
+    private boolean closed;
+
+    public WebPAnimEncoder(OutputStream out, int width, int height, WebPEncoderOptions options, Executor executor, int window) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("canvas size must be positive");
+        if (window <= 0) throw new IllegalArgumentException("window must be positive");
+        this.width = checkUInt24(width);
+        this.height = checkUInt24(height);
+        this.options = Objects.requireNonNull(options);
+        this.executor = Objects.requireNonNull(executor);
+        this.window = window;
+        this.muxer = new WebPMuxer(Objects.requireNonNull(out));
+    }
+
+    /**
+     * ARGB color the canvas is cleared with, a hint that viewers may ignore. Has to be set before the first frame.
+     */
+    public void setBackgroundColor(int backgroundColor) {
+        checkNoFrames();
+        this.backgroundColor = backgroundColor;
+    }
+
+    /**
+     * Number of times the animation is played, 0 for infinite. Has to be set before the first frame.
+     */
+    public void setLoopCount(int loopCount) {
+        checkNoFrames();
+        this.loopCount = checkUInt16(loopCount);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Adds a frame covering the whole canvas, blended over the previous one
+     */
+    public void addFrame(byte[] rgba, int duration) throws IOException {
+        addFrame(rgba, 0, 0, width, height, duration, ANMFChunk.FLAG_ALPHA_BLENDING | ANMFChunk.FLAG_NO_DISPOSE);
+    }
+
+    /**
+     * Schedules encoding of a frame, blocks while the window is full. Offsets have to be even, {@code flags}
+     * are the {@link ANMFChunk} blending and disposal flags. {@code rgba} must not be modified until the encoder is closed.
+     */
+    public void addFrame(byte[] rgba, int x, int y, int frameWidth, int frameHeight, int duration, int flags) throws IOException {
+        Objects.requireNonNull(rgba);
+        if (closed) throw new IllegalStateException("encoder is closed");
+        if (frameWidth <= 0 || frameHeight <= 0) throw new IllegalArgumentException("frame size must be positive");
+        if (x < 0 || y < 0 || isOdd(x) || isOdd(y)) throw new IllegalArgumentException("frame offset must be even and not negative");
+        if (x + frameWidth > width || y + frameHeight > height) throw new IllegalArgumentException("frame is outside of the canvas");
+        if (rgba.length < frameWidth * frameHeight * 4) throw new IllegalArgumentException("rgba is too small for the frame");
+        checkUInt24(duration);
+        if (pending.size() >= window) {
+            writeFrame(pending.poll());
+        }
+        pending.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                Chunk[] chunks = WebPFactory.encodeRGBA(rgba, frameWidth, frameHeight, frameWidth, options);
+                // Frame offsets are stored divided by 2
+                return new ANMFChunk(x / 2, y / 2, frameWidth, frameHeight, duration, flags, chunks);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor));
+        frameCount++;
+    }
+
+    private void writeFrame(CompletableFuture<ANMFChunk> future) throws IOException {
+        ANMFChunk frame;
+        try {
+            frame = future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) throw cause.getCause();
+            throw e;
+        }
+        if (flagsPosition < 0) writeHeader();
+        muxer.writeChunk(frame);
+        alpha |= hasAlpha(frame);
+    }
+
+    private void writeHeader() throws IOException {
+        muxer.beginRiff();
+        flagsPosition = muxer.position() + 8;
+        muxer.writeChunk(new VP8XChunk(vp8xFlags(), width, height));
+        muxer.writeChunk(new ANIMChunk(backgroundColor, loopCount));
+    }
+
+    private int vp8xFlags() {
+        return VP8XChunk.FLAG_ANIM | (alpha ? VP8XChunk.FLAG_ALPH : 0);
+    }
+
+    private static boolean hasAlpha(ANMFChunk frame) {
+        for (Chunk chunk : frame.subchunks()) {
+            if (chunk instanceof ALPHChunk) return true;
+            // Alpha hint bit follows the signature and 14 bit width and height
+            if (chunk instanceof VP8LChunk vp8l) {
+                ByteBuffer data = vp8l.getData();
+                return data.remaining() > 4 && (data.get(data.position() + 4) & 0x10) != 0;
+            }
+        }
+        return false;
+    }
+
+    private void checkNoFrames() {
+        if (frameCount > 0 || closed) throw new IllegalStateException("frames were already added");
+    }
+
+    /**
+     * Writes the remaining frames and completes the container
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            while (!pending.isEmpty()) {
+                writeFrame(pending.poll());
+            }
+            if (flagsPosition < 0) writeHeader();
+            muxer.patchUInt32(flagsPosition, vp8xFlags());
+            muxer.endChunk();
+        } finally {
+            for (CompletableFuture<ANMFChunk> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+            muxer.close();
+        }
+    }
+}
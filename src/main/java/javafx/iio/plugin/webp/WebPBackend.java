@@ -0,0 +1,20 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Native binding used to call libwebp, see {@link WebPLoader#setNativeBackend(WebPBackend)}
+ */
+public enum WebPBackend {
+    /**
+     * Java Native Access, available on every supported runtime
+     */
+    JNA,
+    /**
+     * Foreign Function &amp; Memory API, available on Java 22 and later. Direct buffers are passed without copying
+     * and calls avoid JNA's reflective dispatch, which matters most for small images.
+     */
+    FFM;
+
+    public boolean isAvailable() {
+        return this == JNA || WebPFFM.isAvailable();
+    }
+}
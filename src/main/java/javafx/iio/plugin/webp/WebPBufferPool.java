@@ -0,0 +1,162 @@
+package javafx.iio.plugin.webp;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Pool of pixel buffers grouped in size classes, four classes per power of two so a buffer is never more than
+ * 25% larger than requested. Heap and direct buffers are pooled separately, idle buffers are limited by
+ * {@code maxBytes}. Only buffers handed out by this pool and not yet released are taken back, so foreign buffers
+ * and repeated releases are ignored. A released buffer must not be used anymore.
+ */
+public final class WebPBufferPool {
+
+    private static final int MIN_CLASS_SIZE = 4096;
+
+    private final Map<Integer, ArrayDeque<ByteBuffer>> heapBuffers = new HashMap<>();
+    private final Map<Integer, ArrayDeque<ByteBuffer>> directBuffers = new HashMap<>();
+    private final IssuedBuffers issued = new IssuedBuffers();
+    private final long maxBytes;
+    private long pooledBytes;
+    private long allocationCount;
+    private long reuseCount;
+    private long discardCount;
+
+    public WebPBufferPool(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Buffer with at least {@code size} bytes of capacity, position is 0 and limit is {@code size}
+     */
+    public ByteBuffer acquire(int size, boolean direct) {
+        if (size < 0) throw new IllegalArgumentException("size must not be negative");
+        int classSize = classSize(size);
+        ByteBuffer buffer;
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> buffers = (direct ? directBuffers : heapBuffers).get(classSize);
+            buffer = buffers != null ? buffers.poll() : null;
+            if (buffer != null) {
+                pooledBytes -= classSize;
+                reuseCount++;
+            } else {
+                allocationCount++;
+            }
+        }
+        if (buffer == null) {
+            buffer = direct ? ByteBuffer.allocateDirect(classSize) : ByteBuffer.allocate(classSize);
+        }
+        synchronized (this) {
+            issued.add(buffer);
+        }
+        buffer.clear().limit(size);
+        return buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns buffer to the pool, buffers that were not acquired from this pool, are already released or do not fit
+     * under the limit are left to the garbage collector
+     */
+    public void release(Buffer buffer) {
+        if (!(buffer instanceof ByteBuffer byteBuffer)) return;
+        int capacity = byteBuffer.capacity();
+        synchronized (this) {
+            if (!issued.remove(byteBuffer)) return;
+            if (pooledBytes + capacity > maxBytes) {
+                discardCount++;
+                return;
+            }
+            (byteBuffer.isDirect() ? directBuffers : heapBuffers).computeIfAbsent(capacity, c -> new ArrayDeque<>()).push(byteBuffer);
+            pooledBytes += capacity;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Bytes held by idle buffers
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    public synchronized long getDiscardCount() {
+        return discardCount;
+    }
+
+    public synchronized void clear() {
+        heapBuffers.clear();
+        directBuffers.clear();
+        pooledBytes = 0;
+    }
+
+    // Weak identity set, buffers that are never released must not be kept alive and ByteBuffer.equals compares content
+    private static final class IssuedBuffers {
+        private final Map<Integer, List<IssuedReference>> buffers = new HashMap<>();
+        private final ReferenceQueue<ByteBuffer> queue = new ReferenceQueue<>();
+
+        void add(ByteBuffer buffer) {
+            expunge();
+            IssuedReference reference = new IssuedReference(buffer, queue);
+            buffers.computeIfAbsent(reference.hash, h -> new ArrayList<>(1)).add(reference);
+        }
+
+        boolean remove(ByteBuffer buffer) {
+            expunge();
+            return remove(System.identityHashCode(buffer), reference -> reference.get() == buffer);
+        }
+
+        private boolean remove(int hash, Predicate<IssuedReference> filter) {
+            List<IssuedReference> references = buffers.get(hash);
+            if (references == null) return false;
+            boolean removed = references.removeIf(filter);
+            if (references.isEmpty()) buffers.remove(hash);
+            return removed;
+        }
+
+        private void expunge() {
+            for (Reference<? extends ByteBuffer> cleared; (cleared = queue.poll()) != null; ) {
+                IssuedReference reference = (IssuedReference) cleared;
+                remove(reference.hash, r -> r == reference);
+            }
+        }
+    }
+
+    private static final class IssuedReference extends WeakReference<ByteBuffer> {
+        final int hash;
+
+        IssuedReference(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+        }
+    }
+
+    static int classSize(int size) {
+        if (size <= MIN_CLASS_SIZE) return MIN_CLASS_SIZE;
+        int step = Integer.highestOneBit(size - 1) >>> 2;
+        long classSize = ((long) size + step - 1) / step * step;
+        if (classSize > Integer.MAX_VALUE) throw new IllegalArgumentException("size too large: " + size);
+        return (int) classSize;
+    }
+}
@@ -0,0 +1,166 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java animation compositor used when libwebpdemux is not available. Keeps one persistent RGBA canvas
+ * and touches only the area of the current frame (and of the previous one when it is disposed).
+ */
+final class WebPCompositor {
+
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private final ByteBuffer canvas;
+    private ByteBuffer scratch;
+    private int nextFrame;
+    private WebPRegion disposeRegion;
+    private WebPRegion dirtyRegion;
+
+    WebPCompositor(int canvasWidth, int canvasHeight) {
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.canvas = ByteBuffer.allocateDirect(canvasWidth * canvasHeight * 4);
+        this.dirtyRegion = new WebPRegion(0, 0, canvasWidth, canvasHeight);
+    }
+
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    public ByteBuffer getCanvas() {
+        return canvas.asReadOnlyBuffer();
+    }
+
+    /**
+     * Index of the frame that will be composed next
+     */
+    public int getNextFrame() {
+        return nextFrame;
+    }
+
+    /**
+     * Returns the area changed since the previous call
+     */
+    public WebPRegion takeDirtyRegion() {
+        WebPRegion region = dirtyRegion;
+        dirtyRegion = null;
+        return region;
+    }
+
+    public void reset() {
+        clear(new WebPRegion(0, 0, canvasWidth, canvasHeight));
+        nextFrame = 0;
+        disposeRegion = null;
+    }
+
+    public void compose(ANMFChunk anmfChunk) throws IOException {
+        if (disposeRegion != null) {
+            long start = WebPMetrics.start();
+            clear(disposeRegion);
+            WebPMetrics.record(WebPPhase.COMPOSITE, start, 0, (long) disposeRegion.width() * disposeRegion.height(), 0);
+            dirtyRegion = disposeRegion.union(dirtyRegion);
+            disposeRegion = null;
+        }
+
+        ALPHChunk alphChunk = null;
+        BitstreamChunk bitstreamChunk = null;
+        for (Chunk framesubchunk : anmfChunk.subchunks()) {
+            if (framesubchunk instanceof ALPHChunk chunk) {
+                alphChunk = chunk;
+            } else if (framesubchunk instanceof BitstreamChunk chunk) {
+                bitstreamChunk = chunk;
+            }
+        }
+        if (bitstreamChunk == null) throw new IOException("No VP8 data found in frame " + nextFrame);
+        if (bitstreamChunk instanceof VP8LChunk) alphChunk = null;
+
+        // Frame offsets are stored divided by 2
+        int x = anmfChunk.getFrameX() * 2;
+        int y = anmfChunk.getFrameY() * 2;
+        int width = anmfChunk.getFrameWidth();
+        int height = anmfChunk.getFrameHeight();
+        WebPRegion frameRegion = x < canvasWidth && y < canvasHeight
+                ? new WebPRegion(x, y, width, height).clip(canvasWidth, canvasHeight)
+                : null;
+        boolean blend = anmfChunk.getBlendingFlag() == ANMFChunk.FLAG_ALPHA_BLENDING
+                && (alphChunk != null || bitstreamChunk instanceof VP8LChunk);
+        boolean inside = frameRegion != null && frameRegion.width() == width && frameRegion.height() == height;
+
+        if (frameRegion != null) {
+            if (!blend && inside) {
+                // Nothing to blend with, libwebp writes straight into the canvas
+                ByteBuffer output = canvas.slice((y * canvasWidth + x) * 4, canvas.capacity() - (y * canvasWidth + x) * 4);
+                decode(alphChunk, bitstreamChunk, output, canvasWidth * 4);
+            } else {
+                if (scratch == null || scratch.capacity() < width * height * 4) {
+                    scratch = ByteBuffer.allocateDirect(width * height * 4);
+                }
+                decode(alphChunk, bitstreamChunk, scratch, width * 4);
+                long start = WebPMetrics.start();
+                draw(frameRegion, width, blend);
+                WebPMetrics.record(WebPPhase.COMPOSITE, start, 0, (long) frameRegion.width() * frameRegion.height(), 0);
+            }
+            dirtyRegion = frameRegion.union(dirtyRegion);
+        }
+
+        if (anmfChunk.getDisposalMethodFlag() == ANMFChunk.FLAG_DISPOSE_TO_BACKGROUND) {
+            disposeRegion = frameRegion;
+        }
+        nextFrame++;
+    }
+
+    private static void decode(ALPHChunk alphChunk, BitstreamChunk bitstreamChunk, ByteBuffer output, int stride) throws IOException {
+        if (alphChunk != null) {
+            WebPFactory.decodeRGBAInto(alphChunk, (VP8Chunk) bitstreamChunk, output, stride);
+        } else {
+            WebPFactory.decodeRGBAInto(bitstreamChunk, output, stride);
+        }
+    }
+
+    private void draw(WebPRegion region, int frameWidth, boolean blend) {
+        for (int row = 0; row < region.height(); row++) {
+            int src = row * frameWidth * 4;
+            int dst = ((region.y() + row) * canvasWidth + region.x()) * 4;
+            if (!blend) {
+                canvas.put(dst, scratch, src, region.width() * 4);
+                continue;
+            }
+            for (int column = 0; column < region.width(); column++, src += 4, dst += 4) {
+                int srcA = scratch.get(src + 3) & 0xFF;
+                if (srcA == 0) continue;
+                int dstA = canvas.get(dst + 3) & 0xFF;
+                if (srcA == 255 || dstA == 0) {
+                    canvas.putInt(dst, scratch.getInt(src));
+                    continue;
+                }
+                // Same non-premultiplied blending as libwebp's WebPAnimDecoder
+                int dstFactorA = (dstA * (256 - srcA)) >> 8;
+                int blendA = srcA + dstFactorA;
+                int scale = (1 << 24) / blendA;
+                for (int c = 0; c < 3; c++) {
+                    int srcC = scratch.get(src + c) & 0xFF;
+                    int dstC = canvas.get(dst + c) & 0xFF;
+                    canvas.put(dst + c, (byte) (((srcC * srcA + dstC * dstFactorA) * scale) >>> 24));
+                }
+                canvas.put(dst + 3, (byte) blendA);
+            }
+        }
+    }
+
+    private void clear(WebPRegion region) {
+        for (int row = 0; row < region.height(); row++) {
+            int offset = ((region.y() + row) * canvasWidth + region.x()) * 4;
+            for (int i = 0; i < region.width() * 4; i++) {
+                canvas.put(offset + i, (byte) 0);
+            }
+        }
+        dirtyRegion = region.union(dirtyRegion);
+    }
+}
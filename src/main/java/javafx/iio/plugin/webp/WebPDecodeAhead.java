@@ -0,0 +1,106 @@
+package javafx.iio.plugin.webp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Bounded look-ahead window of frames decoded in parallel on an {@link Executor}. Only independent work may be
+ * scheduled, tasks must not touch the index or the source which are confined to the caller thread. Frames that are
+ * dropped are handed to the release callback, also when their decode finishes after they were dropped.
+ */
+final class WebPDecodeAhead<V> {
+
+    interface Task<V> {
+        V decode() throws IOException;
+    }
+
+    private final Executor executor;
+    private final int window;
+    private final Consumer<? super V> release;
+    private final Map<Integer, CompletableFuture<V>> pending = new HashMap<>();
+
+    WebPDecodeAhead(Executor executor, int window, Consumer<? super V> release) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive");
+        this.executor = Objects.requireNonNull(executor);
+        this.window = window;
+        this.release = Objects.requireNonNull(release);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Drops scheduled frames outside of {@code (index, index + window]}
+     */
+    public void retain(int index) {
+        Iterator<Map.Entry<Integer, CompletableFuture<V>>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, CompletableFuture<V>> entry = iterator.next();
+            if (entry.getKey() < index || entry.getKey() > index + window) {
+                drop(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public boolean isScheduled(int index) {
+        return pending.containsKey(index);
+    }
+
+    public void schedule(int index, Task<V> task) {
+        if (pending.containsKey(index)) return;
+        CompletableFuture<V> future = new CompletableFuture<>();
+        pending.put(index, future);
+        executor.execute(() -> {
+            // Dropped before it started
+            if (future.isDone()) return;
+            try {
+                V value = task.decode();
+                if (!future.complete(value)) release.accept(value);
+            } catch (IOException e) {
+                future.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Waits for a scheduled frame, returns {@code null} if it was not scheduled
+     */
+    public V take(int index) throws IOException {
+        CompletableFuture<V> future = pending.remove(index);
+        if (future == null) return null;
+        try {
+            return future.join();
+        } catch (CancellationException e) {
+            return null;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) throw cause.getCause();
+            throw e;
+        }
+    }
+
+    public void cancel() {
+        for (CompletableFuture<V> future : pending.values()) {
+            drop(future);
+        }
+        pending.clear();
+    }
+
+    // Either the cancel wins and the running task releases its value, or the value is already there and released here
+    private void drop(CompletableFuture<V> future) {
+        future.cancel(false);
+        future.thenAccept(release);
+    }
+}
@@ -0,0 +1,71 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.Chunk;
+import jdk.jfr.*;
+
+import java.nio.charset.StandardCharsets;
+
+@Name("javafx.iio.plugin.webp.Decode")
+@Label("WebP Decode")
+@Category({"AetherJFX", "WebP"})
+@Description("Native libwebp decoding of a single bitstream")
+@StackTrace(false)
+final class WebPDecodeEvent extends Event {
+
+    @Label("FourCC")
+    String fourCC;
+
+    @Label("Alpha")
+    @Description("Lossy bitstream decoded together with ALPH chunk")
+    boolean alpha;
+
+    @Label("Colorspace")
+    String colorspace;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    static WebPDecodeEvent start() {
+        WebPDecodeEvent event = new WebPDecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(Chunk chunk, boolean alpha, int mode, int width, int height, long inputSize, long outputSize) {
+        if (shouldCommit()) {
+            this.fourCC = new String(chunk.getFourCC(), StandardCharsets.US_ASCII).trim();
+            this.alpha = alpha;
+            this.colorspace = colorspace(mode);
+            this.width = width;
+            this.height = height;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+
+    static String colorspace(int mode) {
+        return switch (mode) {
+            case 0 -> "RGB";
+            case 1 -> "RGBA";
+            case 2 -> "BGR";
+            case 3 -> "BGRA";
+            case 4 -> "ARGB";
+            case 7 -> "rgbA";
+            case 8 -> "bgrA";
+            case 9 -> "Argb";
+            default -> String.valueOf(mode);
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Options of the advanced libwebp decoder, cropping is applied before scaling
+ */
+final class WebPDecodeOptions {
+
+    private WebPRegion crop;
+    private int scaledWidth;
+    private int scaledHeight;
+    private boolean multiThreaded;
+
+    public WebPDecodeOptions setCrop(WebPRegion crop) {
+        this.crop = crop;
+        return this;
+    }
+
+    public boolean isCropping() {
+        return crop != null;
+    }
+
+    public WebPRegion getCrop() {
+        return crop;
+    }
+
+    public WebPDecodeOptions setScaledSize(int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("scaled size must be positive");
+        this.scaledWidth = width;
+        this.scaledHeight = height;
+        return this;
+    }
+
+    public boolean isScaling() {
+        return scaledWidth > 0;
+    }
+
+    public int getScaledWidth() {
+        return scaledWidth;
+    }
+
+    public int getScaledHeight() {
+        return scaledHeight;
+    }
+
+    /**
+     * Lets libwebp filter and convert lossy rows on a worker thread while the next rows are decoded.
+     * Output is identical, lossless images are not affected. Worth it for large images only.
+     */
+    public WebPDecodeOptions setMultiThreaded(boolean multiThreaded) {
+        this.multiThreaded = multiThreaded;
+        return this;
+    }
+
+    public boolean isMultiThreaded() {
+        return multiThreaded;
+    }
+
+}
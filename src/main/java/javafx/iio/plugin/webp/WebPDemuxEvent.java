@@ -0,0 +1,50 @@
+package javafx.iio.plugin.webp;
+
+import jdk.jfr.*;
+
+@Name("javafx.iio.plugin.webp.Demux")
+@Label("WebP Demux")
+@Category({"AetherJFX", "WebP"})
+@Description("Parsing of a WebP RIFF container")
+@StackTrace(false)
+final class WebPDemuxEvent extends Event {
+
+    @Label("FourCC")
+    @Description("First chunk of the container, VP8, VP8L or VP8X")
+    String fourCC;
+
+    @Label("Canvas Width")
+    int canvasWidth;
+
+    @Label("Canvas Height")
+    int canvasHeight;
+
+    @Label("Animated")
+    boolean animated;
+
+    @Label("Lazy")
+    @Description("Only chunk headers were parsed")
+    boolean lazy;
+
+    @Label("Container Size")
+    @DataAmount
+    long containerSize;
+
+    static WebPDemuxEvent start() {
+        WebPDemuxEvent event = new WebPDemuxEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(String fourCC, int canvasWidth, int canvasHeight, boolean animated, boolean lazy, long containerSize) {
+        if (shouldCommit()) {
+            this.fourCC = fourCC;
+            this.canvasWidth = canvasWidth;
+            this.canvasHeight = canvasHeight;
+            this.animated = animated;
+            this.lazy = lazy;
+            this.containerSize = containerSize;
+            commit();
+        }
+    }
+}
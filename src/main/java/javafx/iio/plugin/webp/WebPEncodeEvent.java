@@ -0,0 +1,54 @@
+package javafx.iio.plugin.webp;
+
+import jdk.jfr.*;
+
+@Name("javafx.iio.plugin.webp.Encode")
+@Label("WebP Encode")
+@Category({"AetherJFX", "WebP"})
+@Description("Native libwebp encoding")
+@StackTrace(false)
+final class WebPEncodeEvent extends Event {
+
+    @Label("FourCC")
+    String fourCC;
+
+    @Label("Colorspace")
+    String colorspace;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Quality")
+    @Description("Lossy quality factor, -1 for lossless")
+    float quality;
+
+    @Label("Input Size")
+    @DataAmount
+    long inputSize;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    static WebPEncodeEvent start() {
+        WebPEncodeEvent event = new WebPEncodeEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(String fourCC, String colorspace, int width, int height, float quality, long inputSize, long outputSize) {
+        if (shouldCommit()) {
+            this.fourCC = fourCC;
+            this.colorspace = colorspace;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Options of the advanced libwebp encoder. Values which are not set keep the defaults of the preset.
+ */
+public final class WebPEncoderOptions {
+
+    private WebPPreset preset = WebPPreset.DEFAULT;
+    private float quality = 75;
+    private boolean lossless;
+    private int losslessLevel = -1;
+    private int method = -1;
+    private int segments = -1;
+    private int alphaQuality = -1;
+    private int nearLossless = -1;
+    private int targetSize;
+    private boolean exact;
+    private boolean sharpYuv;
+    private boolean multiThreaded;
+
+    public WebPEncoderOptions setPreset(WebPPreset preset) {
+        if (preset == null) throw new IllegalArgumentException("preset must not be null");
+        this.preset = preset;
+        return this;
+    }
+
+    public WebPPreset getPreset() {
+        return preset;
+    }
+
+    /**
+     * Quality factor from 0 to 100, for lossless encoding it is the compression effort. Ignored while a lossless level is set.
+     */
+    public WebPEncoderOptions setQuality(float quality) {
+        if (quality < 0 || quality > 100) throw new IllegalArgumentException("quality must be in range 0 - 100");
+        this.quality = quality;
+        return this;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * Turning lossless encoding off also clears the lossless level
+     */
+    public WebPEncoderOptions setLossless(boolean lossless) {
+        this.lossless = lossless;
+        if (!lossless) this.losslessLevel = -1;
+        return this;
+    }
+
+    public boolean isLossless() {
+        return lossless;
+    }
+
+    /**
+     * Lossless preset from 0 (fast) to 9 (small), -1 to clear it. Method and quality come from the preset regardless of
+     * when they were set. Enables lossless encoding.
+     */
+    public WebPEncoderOptions setLosslessLevel(int losslessLevel) {
+        if (losslessLevel < -1 || losslessLevel > 9) throw new IllegalArgumentException("lossless level must be -1 or in range 0 - 9");
+        this.losslessLevel = losslessLevel;
+        if (losslessLevel != -1) this.lossless = true;
+        return this;
+    }
+
+    public int getLosslessLevel() {
+        return losslessLevel;
+    }
+
+    /**
+     * Speed and size trade-off from 0 (fast) to 6 (small), -1 for the preset default. Ignored while a lossless level is set.
+     */
+    public WebPEncoderOptions setMethod(int method) {
+        if (method < -1 || method > 6) throw new IllegalArgumentException("method must be -1 or in range 0 - 6");
+        this.method = method;
+        return this;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * Number of lossy segments from 1 to 4, -1 for the preset default
+     */
+    public WebPEncoderOptions setSegments(int segments) {
+        if (segments != -1 && (segments < 1 || segments > 4)) throw new IllegalArgumentException("segments must be -1 or in range 1 - 4");
+        this.segments = segments;
+        return this;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Quality of the lossy alpha plane from 0 to 100, -1 for the preset default
+     */
+    public WebPEncoderOptions setAlphaQuality(int alphaQuality) {
+        if (alphaQuality < -1 || alphaQuality > 100) throw new IllegalArgumentException("alpha quality must be -1 or in range 0 - 100");
+        this.alphaQuality = alphaQuality;
+        return this;
+    }
+
+    public int getAlphaQuality() {
+        return alphaQuality;
+    }
+
+    /**
+     * Near-lossless preprocessing from 0 (maximum) to 100 (off), -1 for the preset default. Enables lossless encoding.
+     */
+    public WebPEncoderOptions setNearLossless(int nearLossless) {
+        if (nearLossless < -1 || nearLossless > 100) throw new IllegalArgumentException("near lossless must be -1 or in range 0 - 100");
+        this.nearLossless = nearLossless;
+        if (nearLossless != -1) this.lossless = true;
+        return this;
+    }
+
+    public int getNearLossless() {
+        return nearLossless;
+    }
+
+    /**
+     * Target size in bytes of lossy output, 0 to use the quality factor
+     */
+    public WebPEncoderOptions setTargetSize(int targetSize) {
+        if (targetSize < 0) throw new IllegalArgumentException("target size must not be negative");
+        this.targetSize = targetSize;
+        return this;
+    }
+
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    /**
+     * Preserves RGB values under fully transparent pixels
+     */
+    public WebPEncoderOptions setExact(boolean exact) {
+        this.exact = exact;
+        return this;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Sharper and more accurate RGB to YUV conversion for lossy encoding, which is slower
+     */
+    public WebPEncoderOptions setSharpYuv(boolean sharpYuv) {
+        this.sharpYuv = sharpYuv;
+        return this;
+    }
+
+    public boolean isSharpYuv() {
+        return sharpYuv;
+    }
+
+    /**
+     * Lets libwebp use additional native threads, worth it for large images
+     */
+    public WebPEncoderOptions setMultiThreaded(boolean multiThreaded) {
+        this.multiThreaded = multiThreaded;
+        return this;
+    }
+
+    public boolean isMultiThreaded() {
+        return multiThreaded;
+    }
+
+}
@@ -0,0 +1,44 @@
+package javafx.iio.plugin.webp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * Foreign Function &amp; Memory backend, the multi-release jar replaces this class with its Java 22 version.
+ * Not available on older runtimes.
+ */
+final class WebPFFM {
+
+    private WebPFFM() {
+        throw new UnsupportedOperationException();
+    }
+
+    static boolean isAvailable() {
+        return false;
+    }
+
+    static boolean getInfo(ByteBuffer data, int[] size) {
+        throw unavailable();
+    }
+
+    static boolean decodeInto(int colorspace, ByteBuffer data, ByteBuffer output, int stride) {
+        throw unavailable();
+    }
+
+    static int decode(ByteBuffer data, int colorspace, WebPDecodeOptions options, ByteBuffer output, int stride, int[] size) throws IOException {
+        throw unavailable();
+    }
+
+    static <R> R encode(int colorspace, byte[] pixels, int width, int height, int stride, float quality, Function<ByteBuffer, R> reader) {
+        throw unavailable();
+    }
+
+    static <R> R encode(int[] bgra, int width, int height, int stride, float quality, Function<ByteBuffer, R> reader) {
+        throw unavailable();
+    }
+
+    private static UnsupportedOperationException unavailable() {
+        return new UnsupportedOperationException("FFM backend requires Java 22 or later");
+    }
+}
@@ -1,14 +1,31 @@
 package javafx.iio.plugin.webp;
 
+import com.sun.jna.Function;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 import javafx.iio.plugin.webp.chunks.*;
 import javafx.iio.plugin.webp.jna.WebP;
+import javafx.iio.plugin.webp.jna.WebPBitstreamFeatures;
+import javafx.iio.plugin.webp.jna.WebPConfig;
+import javafx.iio.plugin.webp.jna.WebPDecBuffer;
+import javafx.iio.plugin.webp.jna.WebPDecoderConfig;
+import javafx.iio.plugin.webp.jna.WebPMemoryWriter;
+import javafx.iio.plugin.webp.jna.WebPPicture;
 import javafx.iio.plugin.webp.utils.WebPUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -28,17 +45,36 @@ import static javafx.iio.plugin.webp.utils.WebPUtils.*;
 
 final class WebPFactory {
 
+    // Enough for the VP8 frame header and the VP8L image header
+    private static final int PROBE_SIZE = 32;
+
+    private static volatile WebPBackend backend = WebPBackend.JNA;
+
     private WebPFactory() {
         throw new UnsupportedOperationException();
     }
 
+    static void setBackend(WebPBackend backend) {
+        Objects.requireNonNull(backend);
+        if (!backend.isAvailable()) throw new UnsupportedOperationException(backend + " backend is not available");
+        WebPFactory.backend = backend;
+    }
+
     public static WebPChunk demux(InputStream in) throws IOException {
         Objects.requireNonNull(in);
+        if (in instanceof FileInputStream fileInputStream) {
+            try (in) {
+                return demux(fileInputStream.getChannel());
+            }
+        }
+        WebPDemuxEvent event = WebPDemuxEvent.start();
+        long start = WebPMetrics.start();
         byte[] riffChunkHeader = readFourCC(in);
         if (!arrayEquals(riffChunkHeader, RIFF)) {
             throw new IOException("Illegal magic number: " + new String(riffChunkHeader));
         }
         long fileSize = readUInt32(in);
+        long length = 8 + fileSize;
         byte[] webpChunkHeader = readFourCC(in);
         if (!arrayEquals(webpChunkHeader, WEBP)) {
             throw new IOException("Illegal magic number: " + new String(riffChunkHeader) + new String(webpChunkHeader));
@@ -65,8 +101,8 @@ final class WebPFactory {
             if (vp8ChunkPad) skip1Byte(in);
             byte[] chunkHeader;
             long chunkSize;
-            boolean chunkPad = false;
             while (fileSize > 0) {
+                boolean chunkPad = false;
                 chunkHeader = readFourCC(in);
                 chunkSize = readUInt32(in);
                 fileSize -= 8;
@@ -101,8 +137,8 @@ final class WebPFactory {
                     List<Chunk> framesubchunks = new ArrayList<>();
                     byte[] framesubchunkHeader;
                     long framesubchunkSize;
-                    boolean framesubchunkPad = false;
                     while (chunkSize > 0) {
+                        boolean framesubchunkPad = false;
                         framesubchunkHeader = readFourCC(in);
                         framesubchunkSize = readUInt32(in);
                         if (isOdd(framesubchunkSize)) {
@@ -125,9 +161,9 @@ final class WebPFactory {
                                 // Some VP8X images with ALPH + VP8 and unknown chunks may produce EOFException on read
                             }
                         }
+                        if (framesubchunkPad) skip1Byte(in);
                     }
                     chunks.add(new ANMFChunk(x, y, width, height, duration, reservedBD, framesubchunks.toArray(new Chunk[0])));
-                    if (framesubchunkPad) skip1Byte(in);
                 } else {
                     try {
                         chunks.add(new UnknownChunk(chunkHeader, readNBytes(in, (int) chunkSize)));
@@ -149,19 +185,205 @@ final class WebPFactory {
         }
         if (filePad) skip1Byte(in);
         in.close();
+        WebPMetrics.record(WebPPhase.PARSE, start, length, 0, 0);
+        if (event.shouldCommit()) {
+            Chunk first = webPChunk.subchunks().get(0);
+            boolean vp8x = first instanceof VP8XChunk;
+            event.commit(new String(vp8ChunkHeader, StandardCharsets.US_ASCII).trim(),
+                    vp8x ? ((VP8XChunk) first).getCanvasWidth() : 0, vp8x ? ((VP8XChunk) first).getCanvasHeight() : 0,
+                    vp8x && ((VP8XChunk) first).hasANIMFlag(), false, length);
+        }
+        return webPChunk;
+    }
+
+    /**
+     * Demuxes file contents from the current channel position, payloads are slices of a read-only mapping.
+     * The channel is left open.
+     */
+    public static WebPChunk demux(FileChannel channel) throws IOException {
+        Objects.requireNonNull(channel);
+        return demux(WebPSource.map(channel));
+    }
+
+    /**
+     * Demuxes a container starting at the buffer position, payloads of the returned chunks are slices of {@code buffer}
+     * and are passed to libwebp without copying when the buffer is direct
+     */
+    public static WebPChunk demux(ByteBuffer buffer) throws IOException {
+        Objects.requireNonNull(buffer);
+        WebPDemuxEvent event = WebPDemuxEvent.start();
+        long start = WebPMetrics.start();
+        ByteBuffer in = buffer.slice();
+        WebPChunk webPChunk;
+        byte[] vp8ChunkHeader;
+        long length;
+        try {
+            byte[] riffChunkHeader = readFourCC(in);
+            if (!arrayEquals(riffChunkHeader, RIFF)) {
+                throw new IOException("Illegal magic number: " + new String(riffChunkHeader));
+            }
+            length = 8 + readUInt32(in);
+            byte[] webpChunkHeader = readFourCC(in);
+            if (!arrayEquals(webpChunkHeader, WEBP)) {
+                throw new IOException("Illegal magic number: " + new String(riffChunkHeader) + new String(webpChunkHeader));
+            }
+            if (length > in.limit()) throw new EOFException();
+            in.limit((int) length);
+            vp8ChunkHeader = readFourCC(in);
+            ByteBuffer vp8Payload = readPayload(in, readUInt32(in));
+            if (arrayEquals(vp8ChunkHeader, VP8X)) {
+                List<Chunk> chunks = new ArrayList<>();
+                chunks.add(new VP8XChunk(readInt32(vp8Payload), read1Based(vp8Payload), read1Based(vp8Payload)));
+                while (in.remaining() >= 8) {
+                    byte[] chunkHeader = readFourCC(in);
+                    long chunkSize = readUInt32(in);
+                    if (chunkSize > in.remaining() && !isImageChunk(chunkHeader)) {
+                        // Truncated trailing metadata is ignored like in the stream demuxer
+                        break;
+                    }
+                    ByteBuffer payload = readPayload(in, chunkSize);
+                    if (arrayEquals(chunkHeader, ANIM)) {
+                        chunks.add(new ANIMChunk(readInt32(payload), readUInt16(payload)));
+                    } else if (arrayEquals(chunkHeader, ANMF)) {
+                        int x = readUInt24(payload);
+                        int y = readUInt24(payload);
+                        int width = read1Based(payload);
+                        int height = read1Based(payload);
+                        int duration = readUInt24(payload);
+                        int reservedBD = payload.get() & 0xFF;
+                        List<Chunk> framesubchunks = new ArrayList<>();
+                        while (payload.remaining() >= 8) {
+                            byte[] framesubchunkHeader = readFourCC(payload);
+                            framesubchunks.add(newChunk(framesubchunkHeader, readPayload(payload, readUInt32(payload))));
+                        }
+                        chunks.add(new ANMFChunk(x, y, width, height, duration, reservedBD, framesubchunks.toArray(new Chunk[0])));
+                    } else {
+                        chunks.add(newChunk(chunkHeader, payload));
+                    }
+                }
+                webPChunk = new WebPChunk(chunks.toArray(new Chunk[0]));
+            } else if (arrayEquals(vp8ChunkHeader, VP8)) {
+                webPChunk = new WebPChunk(new VP8Chunk(vp8Payload));
+            } else if (arrayEquals(vp8ChunkHeader, VP8L)) {
+                webPChunk = new WebPChunk(new VP8LChunk(vp8Payload));
+            } else {
+                throw new IOException("No VP8 data found");
+            }
+        } catch (BufferUnderflowException e) {
+            throw new EOFException();
+        }
+        WebPMetrics.record(WebPPhase.PARSE, start, length, 0, 0);
+        if (event.shouldCommit()) {
+            Chunk first = webPChunk.subchunks().get(0);
+            boolean vp8x = first instanceof VP8XChunk;
+            event.commit(new String(vp8ChunkHeader, StandardCharsets.US_ASCII).trim(),
+                    vp8x ? ((VP8XChunk) first).getCanvasWidth() : 0, vp8x ? ((VP8XChunk) first).getCanvasHeight() : 0,
+                    vp8x && ((VP8XChunk) first).hasANIMFlag(), false, length);
+        }
         return webPChunk;
     }
 
+    // View of the next payload that still shares the chunk header, the position is moved past the payload and its padding byte
+    private static ByteBuffer readPayload(ByteBuffer in, long size) throws EOFException {
+        if (size > in.remaining()) throw new EOFException();
+        ByteBuffer payload = in.duplicate().limit(in.position() + (int) size);
+        in.position((int) Math.min(in.limit(), in.position() + size + (isOdd(size) ? 1 : 0)));
+        return payload;
+    }
+
+    private static boolean isImageChunk(byte[] fourCC) {
+        return arrayEquals(fourCC, VP8) || arrayEquals(fourCC, VP8L) || arrayEquals(fourCC, ALPH) || arrayEquals(fourCC, ANMF);
+    }
+
+    /**
+     * Payload chunk sharing {@code data}, ANIM and ANMF are not payload chunks
+     */
+    static RawDataChunk newChunk(byte[] fourCC, ByteBuffer data) {
+        if (arrayEquals(fourCC, VP8)) {
+            return new VP8Chunk(data);
+        } else if (arrayEquals(fourCC, VP8L)) {
+            return new VP8LChunk(data);
+        } else if (arrayEquals(fourCC, ALPH)) {
+            return new ALPHChunk(data);
+        } else if (arrayEquals(fourCC, ICCP)) {
+            return new ICCPChunk(data);
+        } else if (arrayEquals(fourCC, EXIF)) {
+            return new EXIFChunk(data);
+        } else if (arrayEquals(fourCC, XMP)) {
+            return new XMPChunk(data);
+        } else {
+            return new UnknownChunk(fourCC, data);
+        }
+    }
+
+    public static WebPIndex index(InputStream in) throws IOException {
+        WebPDemuxEvent event = WebPDemuxEvent.start();
+        long start = WebPMetrics.start();
+        WebPIndex index = new WebPIndex(WebPSource.of(in));
+        WebPMetrics.record(WebPPhase.PARSE, start, 0, 0, 0);
+        if (event.shouldCommit()) {
+            VP8XChunk vp8xChunk = index.getVP8XChunk();
+            event.commit(vp8xChunk != null ? "VP8X" : new String(index.getChunks().get(0).getFourCC(), StandardCharsets.US_ASCII).trim(),
+                    vp8xChunk != null ? vp8xChunk.getCanvasWidth() : 0, vp8xChunk != null ? vp8xChunk.getCanvasHeight() : 0,
+                    index.isAnimated(), true, index.getLength());
+        }
+        return index;
+    }
+
+    /**
+     * Reads dimensions, frame count and flags without reading bitstream payloads. Animated files are walked
+     * over ANMF headers only, simple files are probed with {@code WebPGetFeatures} on the first bitstream bytes.
+     */
+    public static WebPInfo probe(InputStream in) throws IOException {
+        try (WebPIndex index = new WebPIndex(WebPSource.of(in))) {
+            return probe(index);
+        }
+    }
+
+    static WebPInfo probe(WebPIndex index) throws IOException {
+        long start = WebPMetrics.start();
+        try {
+            VP8XChunk vp8xChunk = index.getVP8XChunk();
+            if (vp8xChunk == null) {
+                WebPIndex.Entry entry = index.getChunks().get(0);
+                // Chunk header is kept so libwebp can check the first partition size against the chunk size
+                byte[] data = index.getSource().readFully(entry.getOffset(), 8 + (int) Math.min(entry.getSize(), PROBE_SIZE));
+                WebPBitstreamFeatures features = new WebPBitstreamFeatures();
+                if (WebP.INSTANCE.WebPGetFeaturesInternal(data, data.length, features, WebP.WEBP_DECODER_ABI_VERSION) != WebP.VP8_STATUS_OK) {
+                    throw new IOException("Unable to read WebP bitstream header");
+                }
+                return new WebPInfo(features.width, features.height, 1, 0, 0, features.has_alpha != 0, false);
+            }
+            if (!vp8xChunk.hasANIMFlag()) {
+                return new WebPInfo(vp8xChunk.getCanvasWidth(), vp8xChunk.getCanvasHeight(), 1, 0, 0, vp8xChunk.hasALPHFlag(), false);
+            }
+            int frameCount = 0;
+            long duration = 0;
+            for (WebPIndex.Frame frame; (frame = index.getFrame(frameCount)) != null; frameCount++) {
+                duration += frame.getFrameDuration();
+            }
+            return new WebPInfo(vp8xChunk.getCanvasWidth(), vp8xChunk.getCanvasHeight(), frameCount, duration,
+                    index.getLoopCount(), vp8xChunk.hasALPHFlag(), true);
+        } finally {
+            WebPMetrics.record(WebPPhase.PARSE, start, 0, 0, 0);
+        }
+    }
+
     public static byte[] decodeRGBA(BitstreamChunk chunk, int[] size) {
         Objects.requireNonNull(chunk);
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        Pointer webPData = webP.WebPDecodeRGBA(chunk.getRawData(), chunk.getSize(), width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeRGBA(chunk.getData(), chunk.getSize(), width, height);
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(chunk, false, WebP.MODE_RGBA, size[0], size[1], chunk.getSize(), (long) size[0] * size[1] * 4);
         byte[] buf = webPData.getByteArray(0, size[0] * size[1] * 4);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
@@ -170,11 +392,16 @@ final class WebPFactory {
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        Pointer webPData = webP.WebPDecodeARGB(chunk.getRawData(), chunk.getSize(), width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeARGB(chunk.getData(), chunk.getSize(), width, height);
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(chunk, false, WebP.MODE_ARGB, size[0], size[1], chunk.getSize(), (long) size[0] * size[1] * 4);
         byte[] buf = webPData.getByteArray(0, size[0] * size[1] * 4);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
@@ -184,71 +411,79 @@ final class WebPFactory {
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        Pointer webPData = webP.WebPDecodeBGRA(chunk.getRawData(), chunk.getSize(), width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeBGRA(chunk.getData(), chunk.getSize(), width, height);
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(chunk, false, WebP.MODE_BGRA, size[0], size[1], chunk.getSize(), (long) size[0] * size[1] * 4);
         int[] buf = webPData.getIntArray(0, size[0] * size[1]);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
-    public static byte[] decodeRGBA(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) {
-        Objects.requireNonNull(alphChunk);
-        Objects.requireNonNull(vp8Chunk);
+    public static byte[] decodeRGBA(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) throws IOException {
         if (size == null || size.length != 2) throw new IllegalArgumentException("size length must be 2");
-        long chunkFullSize = alphChunk.getFullSize() + vp8Chunk.getFullSize();
-        if (chunkFullSize > Integer.MAX_VALUE) throw new IllegalArgumentException("chunk too large to read");
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        long chunkFullSize = chunkData.remaining();
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        byte[] chunkData = new byte[(int) chunkFullSize];
-        System.arraycopy(alphChunk.getRawData(), 0, chunkData, 0, (int) alphChunk.getFullSize());
-        System.arraycopy(vp8Chunk.getRawData(), 0, chunkData, (int) alphChunk.getFullSize(), (int) vp8Chunk.getFullSize());
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
         Pointer webPData = webP.WebPDecodeRGBA(chunkData, chunkFullSize, width, height);
+        if (webPData == null) throw new IOException("Unable to decode WebP bitstream");
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunkFullSize, (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(vp8Chunk, true, WebP.MODE_RGBA, size[0], size[1], chunkFullSize, (long) size[0] * size[1] * 4);
         byte[] buf = webPData.getByteArray(0, size[0] * size[1] * 4);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
-    public static byte[] decodeARGB(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) {
-        Objects.requireNonNull(alphChunk);
-        Objects.requireNonNull(vp8Chunk);
+    public static byte[] decodeARGB(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) throws IOException {
         if (size == null || size.length != 2) throw new IllegalArgumentException("size length must be 2");
-        long chunkFullSize = alphChunk.getFullSize() + vp8Chunk.getFullSize();
-        if (chunkFullSize > Integer.MAX_VALUE) throw new IllegalArgumentException("chunk too large to read");
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        long chunkFullSize = chunkData.remaining();
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        byte[] chunkData = new byte[(int) chunkFullSize];
-        System.arraycopy(alphChunk.getRawData(), 0, chunkData, 0, (int) alphChunk.getFullSize());
-        System.arraycopy(vp8Chunk.getRawData(), 0, chunkData, (int) alphChunk.getFullSize(), (int) vp8Chunk.getFullSize());
-        Pointer webPData = webP.WebPDecodeBGRA(chunkData, chunkFullSize, width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeARGB(chunkData, chunkFullSize, width, height);
+        if (webPData == null) throw new IOException("Unable to decode WebP bitstream");
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunkFullSize, (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(vp8Chunk, true, WebP.MODE_ARGB, size[0], size[1], chunkFullSize, (long) size[0] * size[1] * 4);
         byte[] buf = webPData.getByteArray(0, size[0] * size[1] * 4);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
-    public static int[] decodeBGRA(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) {
-        Objects.requireNonNull(alphChunk);
-        Objects.requireNonNull(vp8Chunk);
+    public static int[] decodeBGRA(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) throws IOException {
         if (size == null || size.length != 2) throw new IllegalArgumentException("size length must be 2");
-        long chunkFullSize = alphChunk.getFullSize() + vp8Chunk.getFullSize();
-        if (chunkFullSize > Integer.MAX_VALUE) throw new IllegalArgumentException("chunk too large to read");
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        long chunkFullSize = chunkData.remaining();
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        byte[] chunkData = new byte[(int) chunkFullSize];
-        System.arraycopy(alphChunk.getRawData(), 0, chunkData, 0, (int) alphChunk.getFullSize());
-        System.arraycopy(vp8Chunk.getRawData(), 0, chunkData, (int) alphChunk.getFullSize(), (int) vp8Chunk.getFullSize());
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
         Pointer webPData = webP.WebPDecodeBGRA(chunkData, chunkFullSize, width, height);
+        if (webPData == null) throw new IOException("Unable to decode WebP bitstream");
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunkFullSize, (long) size[0] * size[1], (long) size[0] * size[1] * 4);
+        event.commit(vp8Chunk, true, WebP.MODE_BGRA, size[0], size[1], chunkFullSize, (long) size[0] * size[1] * 4);
         int[] buf = webPData.getIntArray(0, size[0] * size[1]);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
@@ -258,11 +493,16 @@ final class WebPFactory {
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        Pointer webPData = webP.WebPDecodeRGB(chunk.getRawData(), chunk.getSize(), width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeRGB(chunk.getData(), chunk.getSize(), width, height);
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), (long) size[0] * size[1], (long) size[0] * size[1] * 3);
+        event.commit(chunk, false, WebP.MODE_RGB, size[0], size[1], chunk.getSize(), (long) size[0] * size[1] * 3);
         byte[] buf = webPData.getByteArray(0, width.getValue() * height.getValue() * 3);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
@@ -272,22 +512,359 @@ final class WebPFactory {
         WebP webP = WebP.INSTANCE;
         IntByReference width = new IntByReference();
         IntByReference height = new IntByReference();
-        Pointer webPData = webP.WebPDecodeBGR(chunk.getRawData(), chunk.getSize(), width, height);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        Pointer webPData = webP.WebPDecodeBGR(chunk.getData(), chunk.getSize(), width, height);
         size[0] = width.getValue();
         size[1] = height.getValue();
+        start = WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), (long) size[0] * size[1], (long) size[0] * size[1] * 3);
+        event.commit(chunk, false, WebP.MODE_BGR, size[0], size[1], chunk.getSize(), (long) size[0] * size[1] * 3);
         byte[] buf = webPData.getByteArray(0, width.getValue() * height.getValue() * 3);
         webP.WebPFree(webPData);
+        WebPMetrics.record(WebPPhase.COPY, start, 0, 0, 0);
         return buf;
     }
 
+    public static void getInfo(BitstreamChunk chunk, int[] size) throws IOException {
+        Objects.requireNonNull(chunk);
+        getInfo(chunk.getData(), size);
+    }
+
+    public static void getInfo(ALPHChunk alphChunk, VP8Chunk vp8Chunk, int[] size) throws IOException {
+        getInfo(toByteBuffer(alphChunk, vp8Chunk), size);
+    }
+
+    static void getInfo(byte[] data, int[] size) throws IOException {
+        getInfo(ByteBuffer.wrap(data), size);
+    }
+
+    static void getInfo(ByteBuffer data, int[] size) throws IOException {
+        if (size == null || size.length != 2) throw new IllegalArgumentException("size length must be 2");
+        if (backend == WebPBackend.FFM) {
+            if (!WebPFFM.getInfo(data, size)) throw new IOException("Unable to read WebP bitstream header");
+            return;
+        }
+        IntByReference width = new IntByReference();
+        IntByReference height = new IntByReference();
+        if (WebP.INSTANCE.WebPGetInfo(data, data.remaining(), width, height) == 0) {
+            throw new IOException("Unable to read WebP bitstream header");
+        }
+        size[0] = width.getValue();
+        size[1] = height.getValue();
+    }
+
+    private static boolean decodeInto(int colorspace, ByteBuffer data, ByteBuffer output, int stride) {
+        if (backend == WebPBackend.FFM) {
+            return WebPFFM.decodeInto(colorspace, data, output, stride);
+        }
+        WebP webP = WebP.INSTANCE;
+        Pointer webPData = switch (colorspace) {
+            case WebP.MODE_RGBA -> webP.WebPDecodeRGBAInto(data, data.remaining(), output, output.remaining(), stride);
+            case WebP.MODE_ARGB -> webP.WebPDecodeARGBInto(data, data.remaining(), output, output.remaining(), stride);
+            case WebP.MODE_BGRA -> webP.WebPDecodeBGRAInto(data, data.remaining(), output, output.remaining(), stride);
+            case WebP.MODE_RGB -> webP.WebPDecodeRGBInto(data, data.remaining(), output, output.remaining(), stride);
+            case WebP.MODE_BGR -> webP.WebPDecodeBGRInto(data, data.remaining(), output, output.remaining(), stride);
+            default -> throw new IllegalArgumentException("Unsupported colorspace: " + colorspace);
+        };
+        return webPData != null;
+    }
+
+    public static void decodeRGBAInto(BitstreamChunk chunk, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        checkOutput(output, stride);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_RGBA, chunk.getData(), output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), output.remaining() / 4, 0);
+        commit(event, chunk, false, WebP.MODE_RGBA, chunk.getData(), output.remaining());
+    }
+
+    public static void decodeARGBInto(BitstreamChunk chunk, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        checkOutput(output, stride);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_ARGB, chunk.getData(), output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), output.remaining() / 4, 0);
+        commit(event, chunk, false, WebP.MODE_ARGB, chunk.getData(), output.remaining());
+    }
+
+    public static void decodeBGRAInto(BitstreamChunk chunk, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        checkOutput(output, stride);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_BGRA, chunk.getData(), output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), output.remaining() / 4, 0);
+        commit(event, chunk, false, WebP.MODE_BGRA, chunk.getData(), output.remaining());
+    }
+
+    public static void decodeRGBInto(BitstreamChunk chunk, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        checkOutput(output, stride);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_RGB, chunk.getData(), output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), output.remaining() / 3, 0);
+        commit(event, chunk, false, WebP.MODE_RGB, chunk.getData(), output.remaining());
+    }
+
+    public static void decodeBGRInto(BitstreamChunk chunk, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        checkOutput(output, stride);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_BGR, chunk.getData(), output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunk.getSize(), output.remaining() / 3, 0);
+        commit(event, chunk, false, WebP.MODE_BGR, chunk.getData(), output.remaining());
+    }
+
+    public static void decodeRGBAInto(ALPHChunk alphChunk, VP8Chunk vp8Chunk, ByteBuffer output, int stride) throws IOException {
+        checkOutput(output, stride);
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_RGBA, chunkData, output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunkData.remaining(), output.remaining() / 4, 0);
+        commit(event, vp8Chunk, true, WebP.MODE_RGBA, chunkData, output.remaining());
+    }
+
+    public static void decodeARGBInto(ALPHChunk alphChunk, VP8Chunk vp8Chunk, ByteBuffer output, int stride) throws IOException {
+        checkOutput(output, stride);
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_ARGB, chunkData, output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunkData.remaining(), output.remaining() / 4, 0);
+        commit(event, vp8Chunk, true, WebP.MODE_ARGB, chunkData, output.remaining());
+    }
+
+    public static void decodeBGRAInto(ALPHChunk alphChunk, VP8Chunk vp8Chunk, ByteBuffer output, int stride) throws IOException {
+        checkOutput(output, stride);
+        ByteBuffer chunkData = toByteBuffer(alphChunk, vp8Chunk);
+        WebPDecodeEvent event = WebPDecodeEvent.start();
+        long start = WebPMetrics.start();
+        if (!decodeInto(WebP.MODE_BGRA, chunkData, output, stride)) throw new IOException("Unable to decode WebP bitstream");
+        WebPMetrics.record(WebPPhase.DECODE, start, chunkData.remaining(), output.remaining() / 4, 0);
+        commit(event, vp8Chunk, true, WebP.MODE_BGRA, chunkData, output.remaining());
+    }
+
+    /**
+     * Decodes with libwebp cropping and scaling. The crop origin of lossy (VP8) data is moved to even coordinates by
+     * libwebp without notice, callers needing an odd origin crop one column or row earlier and drop it afterwards
+     */
+    public static void decodeRGBAInto(BitstreamChunk chunk, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        decodeInto(chunk, false, chunk.getData(), WebP.MODE_RGBA, options, output, stride);
+    }
+
+    /**
+     * Same as {@link #decodeRGBAInto(BitstreamChunk, WebPDecodeOptions, ByteBuffer, int)}, the crop origin is moved to
+     * even coordinates as well
+     */
+    public static void decodeRGBAInto(ALPHChunk alphChunk, VP8Chunk vp8Chunk, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        decodeInto(vp8Chunk, true, toByteBuffer(alphChunk, vp8Chunk), WebP.MODE_RGBA, options, output, stride);
+    }
+
+    /**
+     * Same as {@link #decodeRGBAInto(BitstreamChunk, WebPDecodeOptions, ByteBuffer, int)}, color is premultiplied by alpha
+     */
+    public static void decodePremultipliedRGBAInto(BitstreamChunk chunk, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(chunk);
+        decodeInto(chunk, false, chunk.getData(), WebP.MODE_rgbA, options, output, stride);
+    }
+
+    public static void decodePremultipliedRGBAInto(ALPHChunk alphChunk, VP8Chunk vp8Chunk, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        decodeInto(vp8Chunk, true, toByteBuffer(alphChunk, vp8Chunk), WebP.MODE_rgbA, options, output, stride);
+    }
+
+    /**
+     * Decodes into a direct buffer taken from {@code pool}, the buffer is returned with {@link WebPBufferPool#release}
+     */
+    public static ByteBuffer decodeRGBA(BitstreamChunk chunk, WebPBufferPool pool, int[] size) throws IOException {
+        getInfo(chunk, size);
+        ByteBuffer output = pool.acquire(size[0] * size[1] * 4, true);
+        try {
+            decodeRGBAInto(chunk, output, size[0] * 4);
+        } catch (IOException e) {
+            pool.release(output);
+            throw e;
+        }
+        return output;
+    }
+
+    public static ByteBuffer decodeRGBA(ALPHChunk alphChunk, VP8Chunk vp8Chunk, WebPBufferPool pool, int[] size) throws IOException {
+        getInfo(alphChunk, vp8Chunk, size);
+        ByteBuffer output = pool.acquire(size[0] * size[1] * 4, true);
+        try {
+            decodeRGBAInto(alphChunk, vp8Chunk, output, size[0] * 4);
+        } catch (IOException e) {
+            pool.release(output);
+            throw e;
+        }
+        return output;
+    }
+
+    // Advanced decoding API, libwebp applies cropping and scaling while decoding so only the output size is ever produced
+    private static void decodeInto(Chunk chunk, boolean alpha, ByteBuffer data, int colorspace, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        int[] size = new int[2];
+        int status;
+        WebPDecodeEvent event;
+        long start;
+        if (backend == WebPBackend.FFM) {
+            Objects.requireNonNull(options);
+            checkOutput(output, stride);
+            event = WebPDecodeEvent.start();
+            start = WebPMetrics.start();
+            status = WebPFFM.decode(data, colorspace, options, output, stride, size);
+        } else {
+            WebPDecoderConfig config = newDecoderConfig(colorspace, options, output, stride);
+            event = WebPDecodeEvent.start();
+            start = WebPMetrics.start();
+            status = WebP.INSTANCE.WebPDecode(data, data.remaining(), config);
+            size[0] = config.output.width;
+            size[1] = config.output.height;
+        }
+        if (status != WebP.VP8_STATUS_OK) throw new IOException("Unable to decode WebP bitstream, status " + status);
+        WebPMetrics.record(WebPPhase.DECODE, start, data.remaining(), (long) size[0] * size[1], 0);
+        event.commit(chunk, alpha, colorspace, size[0], size[1], data.remaining(), (long) stride * size[1]);
+    }
+
+    // Simple API does not report dimensions, they are only parsed when the event is recorded
+    private static void commit(WebPDecodeEvent event, Chunk chunk, boolean alpha, int colorspace, ByteBuffer data, long outputSize) {
+        if (event.shouldCommit()) {
+            int[] size = new int[2];
+            try {
+                getInfo(data, size);
+            } catch (IOException e) {
+                // The event is still recorded, without dimensions
+            }
+            event.commit(chunk, alpha, colorspace, size[0], size[1], data.remaining(), outputSize);
+        }
+    }
+
+    /**
+     * Decoder config writing into caller-owned {@code output}, the buffer has to stay reachable while the config is in use
+     */
+    static WebPDecoderConfig newDecoderConfig(int colorspace, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        Objects.requireNonNull(options);
+        checkOutput(output, stride);
+        WebPDecoderConfig config = new WebPDecoderConfig();
+        if (WebP.INSTANCE.WebPInitDecoderConfigInternal(config, WebP.WEBP_DECODER_ABI_VERSION) == 0) {
+            throw new IOException("Incompatible libwebp decoder version");
+        }
+        if (options.isCropping()) {
+            config.options.use_cropping = 1;
+            config.options.crop_left = options.getCrop().x();
+            config.options.crop_top = options.getCrop().y();
+            config.options.crop_width = options.getCrop().width();
+            config.options.crop_height = options.getCrop().height();
+        }
+        if (options.isScaling()) {
+            config.options.use_scaling = 1;
+            config.options.scaled_width = options.getScaledWidth();
+            config.options.scaled_height = options.getScaledHeight();
+        }
+        config.options.use_threads = options.isMultiThreaded() ? 1 : 0;
+        config.output.colorspace = colorspace;
+        config.output.is_external_memory = 1;
+        config.output.u.setType(WebPDecBuffer.WebPRGBABuffer.class);
+        config.output.u.RGBA.rgba = Native.getDirectBufferPointer(output).share(output.position());
+        config.output.u.RGBA.stride = stride;
+        config.output.u.RGBA.size = output.remaining();
+        return config;
+    }
+
+    private static void checkOutput(ByteBuffer output, int stride) {
+        Objects.requireNonNull(output);
+        if (!output.isDirect()) throw new IllegalArgumentException("output buffer must be direct");
+        if (stride <= 0) throw new IllegalArgumentException("stride must be positive");
+    }
+
+    // libwebp accepts ALPH chunk followed by VP8 chunk, both with their chunk headers. Chunks demuxed from one buffer
+    // are adjacent and are passed as a view of that buffer, other chunks are copied together
+    private static ByteBuffer toByteBuffer(ALPHChunk alphChunk, VP8Chunk vp8Chunk) throws IOException {
+        Objects.requireNonNull(alphChunk);
+        Objects.requireNonNull(vp8Chunk);
+        ByteBuffer alph = alphChunk.getChunkData();
+        ByteBuffer vp8 = vp8Chunk.getChunkData();
+        if (alph != null && vp8 != null) {
+            long end = alph.position() + alphChunk.getFullSize() + 8 + vp8Chunk.getSize();
+            if (end <= alph.capacity() && isAdjacent(alph, alphChunk.getFullSize(), vp8)) {
+                return alph.limit((int) end);
+            }
+        }
+        return ByteBuffer.wrap(toByteArray(alphChunk, vp8Chunk));
+    }
+
+    private static boolean isAdjacent(ByteBuffer first, long firstSize, ByteBuffer second) {
+        if (first.isDirect() && second.isDirect()) {
+            return Pointer.nativeValue(Native.getDirectBufferPointer(first)) + first.position() + firstSize
+                    == Pointer.nativeValue(Native.getDirectBufferPointer(second)) + second.position();
+        }
+        return first.hasArray() && second.hasArray() && first.array() == second.array()
+                && first.arrayOffset() + first.position() + firstSize == second.arrayOffset() + second.position();
+    }
+
+    private static byte[] toByteArray(ALPHChunk alphChunk, VP8Chunk vp8Chunk) throws IOException {
+        Objects.requireNonNull(alphChunk);
+        Objects.requireNonNull(vp8Chunk);
+        long chunkFullSize = alphChunk.getFullSize() + vp8Chunk.getFullSize();
+        if (chunkFullSize > Integer.MAX_VALUE) throw new IllegalArgumentException("chunk too large to read");
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) chunkFullSize);
+        alphChunk.write(out);
+        vp8Chunk.write(out);
+        return out.toByteArray();
+    }
+
     public static VP8LChunk encodeLosslessBGRA(int[] bgra, int width, int height, int stride) {
         Objects.requireNonNull(bgra);
+        if (backend == WebPBackend.FFM) {
+            return (VP8LChunk) encodeFFM(WebP.MODE_BGRA, bgra, width, height, stride * 4, -1)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeLosslessBGRA(bgra, width, height, stride * 4, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeLosslessBGRA(bgra, width, height, stride * 4, webPDataRef);
+        event.commit("VP8L", "BGRA", width, height, -1, (long) stride * 4 * height, outputSize);
         return getVP8LChunk(webPDataRef);
     }
 
+    // Stride is in bytes, a negative quality selects lossless encoding
+    private static Chunk[] encodeFFM(int colorspace, Object pixels, int width, int height, int stride, float quality) {
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        Encoded encoded = pixels instanceof int[] bgra
+                ? WebPFFM.encode(bgra, width, height, stride, quality, WebPFactory::readEncoded)
+                : WebPFFM.encode(colorspace, (byte[]) pixels, width, height, stride, quality, WebPFactory::readEncoded);
+        event.commit(quality < 0 ? "VP8L" : "VP8", WebPDecodeEvent.colorspace(colorspace), width, height, quality,
+                (long) stride * height, encoded.size());
+        return encoded.chunks();
+    }
+
+    // Payloads are copied out of the RIFF container returned by libwebp before it is freed
+    private static Encoded readEncoded(ByteBuffer riff) {
+        List<Chunk> chunks = new ArrayList<>();
+        ByteBuffer in = riff.duplicate().position(12);
+        while (in.remaining() >= 8) {
+            byte[] fourCC = readFourCC(in);
+            long size = readUInt32(in);
+            byte[] data = new byte[(int) size];
+            in.get(data);
+            in.position(Math.min(in.limit(), in.position() + (isOdd(size) ? 1 : 0)));
+            if (arrayEquals(fourCC, ALPH)) {
+                chunks.add(new ALPHChunk(data));
+            } else if (arrayEquals(fourCC, VP8)) {
+                chunks.add(new VP8Chunk(data));
+            } else if (arrayEquals(fourCC, VP8L)) {
+                chunks.add(new VP8LChunk(data));
+            }
+        }
+        return new Encoded(chunks.toArray(new Chunk[0]), riff.remaining());
+    }
+
+    private record Encoded(Chunk[] chunks, long size) {
+    }
+
     private static VP8LChunk getVP8LChunk(PointerByReference webPDataRef) {
         WebP webP = WebP.INSTANCE;
         Pointer webPData = webPDataRef.getValue();
@@ -300,41 +877,66 @@ final class WebPFactory {
 
     public static VP8LChunk encodeLosslessRGBA(byte[] rgba, int width, int height, int stride) {
         Objects.requireNonNull(rgba);
+        if (backend == WebPBackend.FFM) {
+            return (VP8LChunk) encodeFFM(WebP.MODE_RGBA, rgba, width, height, stride * 4, -1)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeLosslessRGBA(rgba, width, height, stride * 4, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeLosslessRGBA(rgba, width, height, stride * 4, webPDataRef);
+        event.commit("VP8L", "RGBA", width, height, -1, (long) stride * 4 * height, outputSize);
         return getVP8LChunk(webPDataRef);
     }
 
     public static VP8LChunk encodeLosslessRGB(byte[] rgb, int width, int height, int stride) {
         Objects.requireNonNull(rgb);
+        if (backend == WebPBackend.FFM) {
+            return (VP8LChunk) encodeFFM(WebP.MODE_RGB, rgb, width, height, stride * 3, -1)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeLosslessRGB(rgb, width, height, stride * 3, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeLosslessRGB(rgb, width, height, stride * 3, webPDataRef);
+        event.commit("VP8L", "RGB", width, height, -1, (long) stride * 3 * height, outputSize);
         return getVP8LChunk(webPDataRef);
     }
 
     public static VP8LChunk encodeLosslessBGR(byte[] bgr, int width, int height, int stride) {
         Objects.requireNonNull(bgr);
+        if (backend == WebPBackend.FFM) {
+            return (VP8LChunk) encodeFFM(WebP.MODE_BGR, bgr, width, height, stride * 3, -1)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeLosslessBGR(bgr, width, height, stride * 3, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeLosslessBGR(bgr, width, height, stride * 3, webPDataRef);
+        event.commit("VP8L", "BGR", width, height, -1, (long) stride * 3 * height, outputSize);
         return getVP8LChunk(webPDataRef);
     }
 
     public static Chunk[] encodeBGRA(int[] bgra, int width, int height, int stride, float quality) {
         Objects.requireNonNull(bgra);
+        if (backend == WebPBackend.FFM) {
+            return encodeFFM(WebP.MODE_BGRA, bgra, width, height, stride * 4, quality);
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeBGRA(bgra, width, height, stride * 4, quality, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeBGRA(bgra, width, height, stride * 4, quality, webPDataRef);
+        event.commit("VP8", "BGRA", width, height, quality, (long) stride * 4 * height, outputSize);
         return getLossyChunks(webPDataRef);
     }
 
     public static Chunk[] encodeRGBA(byte[] rgba, int width, int height, int stride, float quality) {
         Objects.requireNonNull(rgba);
+        if (backend == WebPBackend.FFM) {
+            return encodeFFM(WebP.MODE_RGBA, rgba, width, height, stride * 4, quality);
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeRGBA(rgba, width, height, stride * 4, quality, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeRGBA(rgba, width, height, stride * 4, quality, webPDataRef);
+        event.commit("VP8", "RGBA", width, height, quality, (long) stride * 4 * height, outputSize);
         return getLossyChunks(webPDataRef);
     }
 
@@ -359,20 +961,126 @@ final class WebPFactory {
 
     public static VP8Chunk encodeBGR(byte[] bgr, int width, int height, int stride, float quality) {
         Objects.requireNonNull(bgr);
+        if (backend == WebPBackend.FFM) {
+            return (VP8Chunk) encodeFFM(WebP.MODE_BGR, bgr, width, height, stride * 3, quality)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeBGR(bgr, width, height, stride * 3, quality, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeBGR(bgr, width, height, stride * 3, quality, webPDataRef);
+        event.commit("VP8", "BGR", width, height, quality, (long) stride * 3 * height, outputSize);
         return getVP8Chunk(webPDataRef);
     }
 
     public static VP8Chunk encodeRGB(byte[] rgb, int width, int height, int stride, float quality) {
         Objects.requireNonNull(rgb);
+        if (backend == WebPBackend.FFM) {
+            return (VP8Chunk) encodeFFM(WebP.MODE_RGB, rgb, width, height, stride * 3, quality)[0];
+        }
         PointerByReference webPDataRef = new PointerByReference();
         WebP webP = WebP.INSTANCE;
-        webP.WebPEncodeRGB(rgb, width, height, stride * 3, quality, webPDataRef);
+        WebPEncodeEvent event = WebPEncodeEvent.start();
+        long outputSize = webP.WebPEncodeRGB(rgb, width, height, stride * 3, quality, webPDataRef);
+        event.commit("VP8", "RGB", width, height, quality, (long) stride * 3 * height, outputSize);
         return getVP8Chunk(webPDataRef);
     }
 
+    public static Chunk[] encodeRGBA(byte[] rgba, int width, int height, int stride, WebPEncoderOptions options) throws IOException {
+        Objects.requireNonNull(rgba);
+        return encode(options, WebP.MODE_RGBA, width, height, (long) stride * 4 * height,
+                picture -> WebP.INSTANCE.WebPPictureImportRGBA(picture, rgba, stride * 4));
+    }
+
+    public static Chunk[] encodeBGRA(int[] bgra, int width, int height, int stride, WebPEncoderOptions options) throws IOException {
+        Objects.requireNonNull(bgra);
+        return encode(options, WebP.MODE_BGRA, width, height, (long) stride * 4 * height,
+                picture -> WebP.INSTANCE.WebPPictureImportBGRA(picture, bgra, stride * 4));
+    }
+
+    public static Chunk[] encodeRGB(byte[] rgb, int width, int height, int stride, WebPEncoderOptions options) throws IOException {
+        Objects.requireNonNull(rgb);
+        return encode(options, WebP.MODE_RGB, width, height, (long) stride * 3 * height,
+                picture -> WebP.INSTANCE.WebPPictureImportRGB(picture, rgb, stride * 3));
+    }
+
+    public static Chunk[] encodeBGR(byte[] bgr, int width, int height, int stride, WebPEncoderOptions options) throws IOException {
+        Objects.requireNonNull(bgr);
+        return encode(options, WebP.MODE_BGR, width, height, (long) stride * 3 * height,
+                picture -> WebP.INSTANCE.WebPPictureImportBGR(picture, bgr, stride * 3));
+    }
+
+    private interface PictureImport {
+        int importPixels(WebPPicture picture);
+    }
+
+    // Advanced encoder always goes through JNA, pixels are imported as ARGB and converted by WebPEncode so that
+    // sharp YUV conversion applies to lossy output
+    private static Chunk[] encode(WebPEncoderOptions options, int colorspace, int width, int height, long inputSize,
+                                  PictureImport pixels) throws IOException {
+        WebP webP = WebP.INSTANCE;
+        WebPConfig config = newEncoderConfig(options);
+        WebPPicture picture = new WebPPicture();
+        if (webP.WebPPictureInitInternal(picture, WebP.WEBP_ENCODER_ABI_VERSION) == 0) {
+            throw new IOException("Incompatible libwebp encoder version");
+        }
+        picture.use_argb = 1;
+        picture.width = width;
+        picture.height = height;
+        WebPMemoryWriter writer = new WebPMemoryWriter();
+        webP.WebPMemoryWriterInit(writer);
+        try {
+            WebPEncodeEvent event = WebPEncodeEvent.start();
+            if (pixels.importPixels(picture) == 0) {
+                throw new IOException("Unable to import pixels, error " + picture.error_code);
+            }
+            picture.writer = MemoryWriter.WRITE;
+            picture.custom_ptr = writer.getPointer();
+            if (webP.WebPEncode(config, picture) == 0) {
+                throw new IOException("Unable to encode WebP image, error " + picture.error_code);
+            }
+            writer.read();
+            Encoded encoded = readEncoded(writer.mem.getByteBuffer(0, writer.size));
+            event.commit(options.isLossless() ? "VP8L" : "VP8", WebPDecodeEvent.colorspace(colorspace), width, height,
+                    options.isLossless() ? -1 : options.getQuality(), inputSize, encoded.size());
+            return encoded.chunks();
+        } finally {
+            writer.read();
+            webP.WebPMemoryWriterClear(writer);
+            webP.WebPPictureFree(picture);
+        }
+    }
+
+    static WebPConfig newEncoderConfig(WebPEncoderOptions options) {
+        Objects.requireNonNull(options);
+        WebP webP = WebP.INSTANCE;
+        WebPConfig config = new WebPConfig();
+        if (webP.WebPConfigInitInternal(config, options.getPreset().ordinal(), options.getQuality(), WebP.WEBP_ENCODER_ABI_VERSION) == 0) {
+            throw new IllegalStateException("Incompatible libwebp encoder version");
+        }
+        // The lossless preset decides method and quality, see WebPEncoderOptions.setLosslessLevel
+        if (options.getLosslessLevel() >= 0) {
+            webP.WebPConfigLosslessPreset(config, options.getLosslessLevel());
+        } else if (options.getMethod() >= 0) {
+            config.method = options.getMethod();
+        }
+        config.lossless = options.isLossless() ? 1 : 0;
+        if (options.getSegments() > 0) config.segments = options.getSegments();
+        if (options.getAlphaQuality() >= 0) config.alpha_quality = options.getAlphaQuality();
+        if (options.getNearLossless() >= 0) config.near_lossless = options.getNearLossless();
+        config.target_size = options.getTargetSize();
+        config.exact = options.isExact() ? 1 : 0;
+        config.use_sharp_yuv = options.isSharpYuv() ? 1 : 0;
+        config.thread_level = options.isMultiThreaded() ? 1 : 0;
+        if (webP.WebPValidateConfig(config) == 0) throw new IllegalArgumentException("Invalid encoder options");
+        return config;
+    }
+
+    // WebPMemoryWrite is only passed to libwebp as the writer callback
+    private static final class MemoryWriter {
+        static final Function WRITE = ((Library.Handler) Proxy.getInvocationHandler(WebP.INSTANCE)).getNativeLibrary()
+                .getFunction("WebPMemoryWrite");
+    }
+
     private static VP8Chunk getVP8Chunk(PointerByReference webPDataRef) {
         WebP webP = WebP.INSTANCE;
         Pointer webPData = webPDataRef.getValue();
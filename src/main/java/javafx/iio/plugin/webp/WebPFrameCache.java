@@ -0,0 +1,174 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.IIOImageFrame;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of decoded frames shared by all loaders, see {@link WebPLoader#setFrameCache(WebPFrameCache)}.
+ * Entries are keyed by a SHA-256 hash of the container bytes the frame depends on plus the decode parameters and evicted
+ * by their pixel size once the memory ceiling is exceeded. Cached frames share pixel memory, they must not be modified.
+ */
+public final class WebPFrameCache {
+
+    private final LinkedHashMap<Key, IIOImageFrame> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public WebPFrameCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Pixel bytes currently held by the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    synchronized IIOImageFrame get(Key key) {
+        IIOImageFrame frame = entries.get(key);
+        if (frame == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return copyOf(frame);
+    }
+
+    synchronized void put(Key key, IIOImageFrame frame) {
+        long frameSize = sizeOf(frame);
+        if (frameSize > maxBytes) return;
+        IIOImageFrame previous = entries.put(key, copyOf(frame));
+        if (previous != null) size -= sizeOf(previous);
+        size += frameSize;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<IIOImageFrame> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    // Positions of the pixel buffer are independent for every caller, read-only views keep cached pixels out of buffer pools
+    private static IIOImageFrame copyOf(IIOImageFrame frame) {
+        Buffer imageData = frame.getImageData();
+        return new IIOImageFrame(
+                frame.getImageType(),
+                imageData instanceof ByteBuffer byteBuffer ? byteBuffer.asReadOnlyBuffer().order(byteBuffer.order()) : imageData.duplicate(),
+                frame.getWidth(), frame.getHeight(),
+                frame.getStride(), null,
+                frame.getMetadata()
+        );
+    }
+
+    private static long sizeOf(IIOImageFrame frame) {
+        return (long) frame.getStride() * frame.getHeight();
+    }
+
+    /**
+     * SHA-256 of growing container prefixes. Animation frames only depend on the bytes up to the end of their ANMF chunk,
+     * so the key of a frame never needs more of a non-seekable stream than decoding it does.
+     */
+    static final class ContentDigest {
+
+        private final WebPSource source;
+        private final Map<Long, Content> contents = new HashMap<>();
+        private final MessageDigest digest;
+        private long position;
+
+        ContentDigest(WebPSource source) {
+            this.source = source;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Hash of the first {@code length} bytes
+         */
+        Content digest(long length) throws IOException {
+            Content content = contents.get(length);
+            if (content != null) return content;
+            // Random access to an earlier frame that was never hashed
+            if (length < position) {
+                digest.reset();
+                position = 0;
+            }
+            byte[] buf = new byte[(int) Math.min(length - position, 64 * 1024)];
+            while (position < length) {
+                int count = (int) Math.min(buf.length, length - position);
+                source.readFully(position, buf, 0, count);
+                digest.update(buf, 0, count);
+                position += count;
+            }
+            ByteBuffer hash;
+            try {
+                hash = ByteBuffer.wrap(((MessageDigest) digest.clone()).digest());
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+            content = new Content(length, hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+            contents.put(length, content);
+            return content;
+        }
+    }
+
+    /**
+     * Hash of a container prefix of {@code length} bytes
+     */
+    record Content(long length, long hash0, long hash1, long hash2, long hash3) {
+    }
+
+    record Key(Content content, int imageIndex, WebPRegion region, int width, int height,
+               boolean preserveAspectRatio, boolean smooth, boolean composited, boolean premultiplied) {
+    }
+}
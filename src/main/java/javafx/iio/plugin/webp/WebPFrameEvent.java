@@ -0,0 +1,60 @@
+package javafx.iio.plugin.webp;
+
+import jdk.jfr.*;
+
+@Name("javafx.iio.plugin.webp.Frame")
+@Label("WebP Frame Decode")
+@Category({"AetherJFX", "WebP"})
+@Description("Decoding of an image or animation frame by WebPLoader, including reading, compositing and scaling")
+final class WebPFrameEvent extends Event {
+
+    @Label("Frame Index")
+    int frameIndex;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Source Width")
+    int sourceWidth;
+
+    @Label("Source Height")
+    int sourceHeight;
+
+    @Label("Animated")
+    boolean animated;
+
+    @Label("Composited")
+    boolean composited;
+
+    @Label("Cached")
+    boolean cached;
+
+    @Label("Output Size")
+    @DataAmount
+    long outputSize;
+
+    static WebPFrameEvent start() {
+        WebPFrameEvent event = new WebPFrameEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(int frameIndex, int width, int height, int sourceWidth, int sourceHeight,
+                boolean animated, boolean composited, boolean cached, long outputSize) {
+        if (shouldCommit()) {
+            this.frameIndex = frameIndex;
+            this.width = width;
+            this.height = height;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.animated = animated;
+            this.composited = composited;
+            this.cached = cached;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package javafx.iio.plugin.webp;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import javafx.iio.plugin.webp.jna.WebP;
+import javafx.iio.plugin.webp.jna.WebPDecoderConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * Progressive decoder on top of libwebp's WebPIDecoder. Compressed data is appended as it arrives and decoded rows
+ * become visible in the caller-owned output buffer immediately.
+ */
+final class WebPIncrementalDecoder implements Closeable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final State state;
+    private final Cleaner.Cleanable cleanable;
+    private final IntByReference lastY = new IntByReference();
+    private final IntByReference width = new IntByReference();
+    private final IntByReference height = new IntByReference();
+    private final IntByReference stride = new IntByReference();
+    private int status = WebP.VP8_STATUS_SUSPENDED;
+
+    WebPIncrementalDecoder(int colorspace, WebPDecodeOptions options, ByteBuffer output, int stride) throws IOException {
+        WebPDecoderConfig config = WebPFactory.newDecoderConfig(colorspace, options, output, stride);
+        Pointer decoder = WebP.INSTANCE.WebPIDecode(null, 0, config);
+        if (decoder == null) throw new IOException("Unable to create incremental decoder");
+        state = new State(decoder, config, output);
+        cleanable = CLEANER.register(this, state);
+    }
+
+    /**
+     * Appends next part of the RIFF container, returns {@code true} once the image is completely decoded
+     */
+    public boolean append(byte[] data, int length) throws IOException {
+        if (isDone()) return true;
+        status = WebP.INSTANCE.WebPIAppend(state.decoder, data, length);
+        if (status != WebP.VP8_STATUS_OK && status != WebP.VP8_STATUS_SUSPENDED) {
+            throw new IOException("Unable to decode WebP bitstream, status " + status);
+        }
+        return isDone();
+    }
+
+    public boolean isDone() {
+        return status == WebP.VP8_STATUS_OK;
+    }
+
+    /**
+     * Number of output rows that are fully decoded so far
+     */
+    public int getDecodedRows() {
+        Pointer rgb = WebP.INSTANCE.WebPIDecGetRGB(state.decoder, lastY, width, height, stride);
+        return rgb != null ? lastY.getValue() : 0;
+    }
+
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    private static final class State implements Runnable {
+        private final Pointer decoder;
+        // libwebp keeps pointers into the config and writes into the output until the decoder is deleted
+        private final WebPDecoderConfig config;
+        private final ByteBuffer output;
+
+        State(Pointer decoder, WebPDecoderConfig config, ByteBuffer output) {
+            this.decoder = decoder;
+            this.config = config;
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            WebP.INSTANCE.WebPIDelete(decoder);
+        }
+    }
+}
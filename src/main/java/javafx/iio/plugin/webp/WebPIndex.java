@@ -0,0 +1,326 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static javafx.iio.plugin.webp.chunks.ALPHChunk.ALPH;
+import static javafx.iio.plugin.webp.chunks.ANIMChunk.ANIM;
+import static javafx.iio.plugin.webp.chunks.ANMFChunk.ANMF;
+import static javafx.iio.plugin.webp.chunks.EXIFChunk.EXIF;
+import static javafx.iio.plugin.webp.chunks.ICCPChunk.ICCP;
+import static javafx.iio.plugin.webp.chunks.VP8Chunk.VP8;
+import static javafx.iio.plugin.webp.chunks.VP8LChunk.VP8L;
+import static javafx.iio.plugin.webp.chunks.VP8XChunk.VP8X;
+import static javafx.iio.plugin.webp.chunks.WebPChunk.RIFF;
+import static javafx.iio.plugin.webp.chunks.WebPChunk.WEBP;
+import static javafx.iio.plugin.webp.chunks.XMPChunk.XMP;
+import static javafx.iio.plugin.webp.utils.WebPUtils.*;
+
+/**
+ * Lazy chunk index of a WebP container. Only chunk headers are parsed while walking the file,
+ * payloads are read from the {@link WebPSource} when a chunk is loaded.
+ */
+final class WebPIndex implements Closeable {
+
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int ANMF_HEADER_SIZE = 16;
+
+    private final WebPSource source;
+    private final byte[] header = new byte[CHUNK_HEADER_SIZE + ANMF_HEADER_SIZE];
+    private final long end;
+    private final List<Entry> chunks = new ArrayList<>();
+    private final List<Frame> frames = new ArrayList<>();
+    private VP8XChunk vp8xChunk;
+    private ANIMChunk animChunk;
+    private long position;
+
+    WebPIndex(WebPSource source) throws IOException {
+        this.source = Objects.requireNonNull(source);
+        source.readFully(0, header, 0, 12);
+        byte[] riffChunkHeader = Arrays.copyOfRange(header, 0, 4);
+        if (!arrayEquals(riffChunkHeader, RIFF)) {
+            throw new IOException("Illegal magic number: " + new String(riffChunkHeader));
+        }
+        long fileSize = toUInt32(header, 4);
+        byte[] webpChunkHeader = Arrays.copyOfRange(header, 8, 12);
+        if (!arrayEquals(webpChunkHeader, WEBP)) {
+            throw new IOException("Illegal magic number: " + new String(riffChunkHeader) + new String(webpChunkHeader));
+        }
+        end = CHUNK_HEADER_SIZE + fileSize;
+        position = 12;
+
+        Entry first = nextEntry();
+        if (first == null) throw new IOException("No VP8 data found");
+        if (arrayEquals(first.fourCC, VP8X)) {
+            source.readFully(first.getDataOffset(), header, 0, 10);
+            vp8xChunk = new VP8XChunk(toInt32(header, 0), toUInt24(header, 4) + 1, toUInt24(header, 7) + 1);
+        } else if (arrayEquals(first.fourCC, VP8) || arrayEquals(first.fourCC, VP8L)) {
+            chunks.add(first);
+            position = end;
+        } else {
+            throw new IOException("No VP8 data found");
+        }
+    }
+
+    public WebPSource getSource() {
+        return source;
+    }
+
+    /**
+     * Length of the whole container including the RIFF header
+     */
+    public long getLength() {
+        return end;
+    }
+
+    public VP8XChunk getVP8XChunk() {
+        return vp8xChunk;
+    }
+
+    public boolean isAnimated() {
+        return vp8xChunk != null && vp8xChunk.hasANIMFlag();
+    }
+
+    public int getLoopCount() throws IOException {
+        // ANIM chunk always precedes the first ANMF chunk
+        getFrame(0);
+        return animChunk != null ? animChunk.getLoopCount() : 0;
+    }
+
+    public ANIMChunk getANIMChunk() throws IOException {
+        getFrame(0);
+        return animChunk;
+    }
+
+    /**
+     * Walks the container up to the requested frame, returns {@code null} if there is no such frame
+     */
+    public Frame getFrame(int index) throws IOException {
+        while (frames.size() <= index) {
+            if (!advance()) return null;
+        }
+        return frames.get(index);
+    }
+
+    /**
+     * Top level chunks other than ANMF and ANIM, walks the whole container
+     */
+    public List<Entry> getChunks() throws IOException {
+        while (advance()) ;
+        return Collections.unmodifiableList(chunks);
+    }
+
+    public ANMFChunk loadFrame(int index) throws IOException {
+        Frame frame = getFrame(index);
+        if (frame == null) return null;
+        buffer(frame.subchunks);
+        Chunk[] framesubchunks = new Chunk[frame.subchunks.size()];
+        for (int i = 0; i < framesubchunks.length; i++) {
+            framesubchunks[i] = load(frame.subchunks.get(i));
+        }
+        return new ANMFChunk(frame.x, frame.y, frame.width, frame.height, frame.duration, frame.flags, framesubchunks);
+    }
+
+    /**
+     * Loads top level ALPH, VP8 and VP8L chunks, metadata payloads are left unread
+     */
+    public List<Chunk> loadImageChunks() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : getChunks()) {
+            if (arrayEquals(entry.fourCC, ALPH) || arrayEquals(entry.fourCC, VP8) || arrayEquals(entry.fourCC, VP8L)) {
+                entries.add(entry);
+            }
+        }
+        buffer(entries);
+        List<Chunk> loaded = new ArrayList<>();
+        for (Entry entry : entries) {
+            loaded.add(load(entry));
+        }
+        return loaded;
+    }
+
+    // Stream sources read the whole range at once, so ALPH and VP8 views share one array and can be decoded without a copy
+    private void buffer(List<Entry> entries) throws IOException {
+        if (entries.size() < 2) return;
+        long from = entries.get(0).getOffset();
+        long to = entries.get(entries.size() - 1).getDataOffset() + entries.get(entries.size() - 1).size;
+        if (to - from <= Integer.MAX_VALUE) {
+            source.view(from, (int) (to - from));
+        }
+    }
+
+    public Chunk load(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE) throw new IOException("chunk too large to read");
+        long start = WebPMetrics.start();
+        ByteBuffer view = source.view(entry.getDataOffset(), (int) entry.size);
+        if (view != null) {
+            WebPMetrics.record(WebPPhase.READ, start, entry.size, 0, 0);
+            return WebPFactory.newChunk(entry.fourCC, view);
+        }
+        byte[] data = source.readFully(entry.getDataOffset(), (int) entry.size);
+        WebPMetrics.record(WebPPhase.READ, start, entry.size, 0, 0);
+        if (arrayEquals(entry.fourCC, VP8)) {
+            return new VP8Chunk(data);
+        } else if (arrayEquals(entry.fourCC, VP8L)) {
+            return new VP8LChunk(data);
+        } else if (arrayEquals(entry.fourCC, ALPH)) {
+            return new ALPHChunk(data);
+        } else if (arrayEquals(entry.fourCC, ICCP)) {
+            return new ICCPChunk(data);
+        } else if (arrayEquals(entry.fourCC, EXIF)) {
+            return new EXIFChunk(data);
+        } else if (arrayEquals(entry.fourCC, XMP)) {
+            return new XMPChunk(data);
+        } else {
+            return new UnknownChunk(entry.getFourCC(), data);
+        }
+    }
+
+    private boolean advance() throws IOException {
+        long start = WebPMetrics.start();
+        try {
+            return advanceEntry();
+        } finally {
+            WebPMetrics.record(WebPPhase.PARSE, start, 0, 0, 0);
+        }
+    }
+
+    private boolean advanceEntry() throws IOException {
+        Entry entry = nextEntry();
+        if (entry == null) return false;
+        if (arrayEquals(entry.fourCC, ANMF)) {
+            if (entry.size < ANMF_HEADER_SIZE) throw new IOException("ANMF chunk too small");
+            source.readFully(entry.getDataOffset(), header, 0, ANMF_HEADER_SIZE);
+            int x = toUInt24(header, 0);
+            int y = toUInt24(header, 3);
+            int width = toUInt24(header, 6) + 1;
+            int height = toUInt24(header, 9) + 1;
+            int duration = toUInt24(header, 12);
+            int flags = header[15] & 0xFF;
+            List<Entry> framesubchunks = new ArrayList<>();
+            long framesubchunkPosition = entry.getDataOffset() + ANMF_HEADER_SIZE;
+            long framesubchunkEnd = entry.getDataOffset() + entry.size;
+            while (framesubchunkPosition + CHUNK_HEADER_SIZE <= framesubchunkEnd) {
+                Entry framesubchunk = readEntry(framesubchunkPosition);
+                framesubchunks.add(framesubchunk);
+                framesubchunkPosition = framesubchunk.getEndOffset();
+            }
+            frames.add(new Frame(x, y, width, height, duration, flags, Collections.unmodifiableList(framesubchunks), entry.getEndOffset()));
+        } else if (arrayEquals(entry.fourCC, ANIM)) {
+            source.readFully(entry.getDataOffset(), header, 0, 6);
+            animChunk = new ANIMChunk(toInt32(header, 0), toUInt16(header, 4));
+        } else {
+            chunks.add(entry);
+        }
+        return true;
+    }
+
+    private Entry nextEntry() throws IOException {
+        if (position + CHUNK_HEADER_SIZE > end) return null;
+        Entry entry = readEntry(position);
+        position = entry.getEndOffset();
+        return entry;
+    }
+
+    private Entry readEntry(long offset) throws IOException {
+        source.readFully(offset, header, 0, CHUNK_HEADER_SIZE);
+        return new Entry(Arrays.copyOfRange(header, 0, 4), offset, toUInt32(header, 4));
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    static final class Entry {
+        private final byte[] fourCC;
+        private final long offset;
+        private final long size;
+
+        Entry(byte[] fourCC, long offset, long size) {
+            this.fourCC = fourCC;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public byte[] getFourCC() {
+            return fourCC.clone();
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getDataOffset() {
+            return offset + CHUNK_HEADER_SIZE;
+        }
+
+        public long getEndOffset() {
+            return offset + CHUNK_HEADER_SIZE + size + (isOdd(size) ? 1 : 0);
+        }
+    }
+
+    static final class Frame {
+        private final int x, y, width, height, duration, flags;
+        private final List<Entry> subchunks;
+        private final long endOffset;
+
+        Frame(int x, int y, int width, int height, int duration, int flags, List<Entry> subchunks, long endOffset) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.duration = duration;
+            this.flags = flags;
+            this.subchunks = subchunks;
+            this.endOffset = endOffset;
+        }
+
+        public int getFrameX() {
+            return x;
+        }
+
+        public int getFrameY() {
+            return y;
+        }
+
+        public int getFrameWidth() {
+            return width;
+        }
+
+        public int getFrameHeight() {
+            return height;
+        }
+
+        public int getFrameDuration() {
+            return duration;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public List<Entry> subchunks() {
+            return subchunks;
+        }
+
+        /**
+         * End of the ANMF chunk including padding
+         */
+        public long getEndOffset() {
+            return endOffset;
+        }
+    }
+}
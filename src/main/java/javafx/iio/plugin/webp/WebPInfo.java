@@ -0,0 +1,8 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Image properties read from container and bitstream headers only, see {@link WebPLoader#probe(java.io.InputStream)}.
+ * {@code duration} is the sum of all frame durations in milliseconds, {@code 0} for still images.
+ */
+public record WebPInfo(int width, int height, int frameCount, long duration, int loopCount, boolean alpha, boolean animated) {
+}
@@ -2,121 +2,417 @@ package javafx.iio.plugin.webp;
 
 import javafx.iio.*;
 import javafx.iio.plugin.webp.chunks.*;
+import javafx.iio.plugin.webp.jna.WebP;
 
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
-public class WebPLoader extends IIOLoader {
+public class WebPLoader extends IIOLoader implements Closeable {
     private static final String FORMAT_NAME = "WebP";
     private static final List<String> EXTENSIONS = List.of("webp");
     private static final List<IIOSignature> SIGNATURES = List.of(new IIOSignature((byte) 'R', (byte) 'I', (byte) 'F', (byte) 'F'));
 
-    private WebPChunk webpChunk;
+    private static volatile boolean animationCompositing;
+    private static volatile WebPFrameCache frameCache;
+    private static volatile Executor decodeAheadExecutor;
+    private static volatile int decodeAheadFrames;
+    private static volatile WebPBufferPool bufferPool;
+    private static volatile long defaultThreadingThreshold;
+    private static volatile boolean defaultPremultipliedOutput;
+
+    private WebPIndex index;
+    private WebPAnimDecoder animDecoder;
+    private WebPCompositor compositor;
+    private WebPRegion dirtyRegion;
+    private WebPProgressListener progressListener;
+    private WebPFrameCache.ContentDigest contentDigest;
+    private WebPDecodeAhead<PixelData> decodeAhead;
+    private Target decodeAheadTarget;
+    private long threadingThreshold = -1;
+    private Boolean premultipliedOutput;
+    private boolean closed;
 
     public static void register() {
         IIO.registerImageLoader(FORMAT_NAME, EXTENSIONS, SIGNATURES, EXTENSIONS, WebPLoader::new);
     }
 
-    private WebPLoader(InputStream stream) {
+    /**
+     * When enabled, animation frames are returned as fully composited canvas frames instead of raw frame rectangles.
+     * Compositing is done natively by libwebpdemux when it is available, otherwise by an incremental Java compositor.
+     */
+    public static void setAnimationCompositing(boolean enabled) {
+        animationCompositing = enabled;
+    }
+
+    /**
+     * Shares decoded frames between loaders, repeated loads of the same content with the same decode parameters
+     * skip chunk loading and decoding. {@code null} disables caching.
+     * <p>
+     * Lookups hash the container up to the end of the requested frame, which is the whole file for still images.
+     * Streams that can not seek keep these bytes in memory until the loader is closed, the same as decoding them would.
+     */
+    public static void setFrameCache(WebPFrameCache cache) {
+        frameCache = cache;
+    }
+
+    /**
+     * Raw animation frames following the requested one are decoded in parallel on {@code executor}, at most
+     * {@code frames} ahead. {@code null} executor disables decode-ahead.
+     */
+    public static void setDecodeAhead(Executor executor, int frames) {
+        if (executor != null && frames <= 0) throw new IllegalArgumentException("frames must be positive");
+        decodeAheadFrames = frames;
+        decodeAheadExecutor = executor;
+    }
+
+    /**
+     * Pixel buffers of decoded frames are taken from {@code pool}, frames are handed back with
+     * {@link #releaseFrame(IIOImageFrame)}. Frames are not pooled while a frame cache is set.
+     */
+    public static void setBufferPool(WebPBufferPool pool) {
+        bufferPool = pool;
+    }
+
+    /**
+     * Returns pixel buffer of a frame that is no longer used to the buffer pool, does nothing while a frame cache is set
+     */
+    public static void releaseFrame(IIOImageFrame frame) {
+        WebPBufferPool pool = bufferPool;
+        if (pool != null && frame != null && frameCache == null) {
+            pool.release(frame.getImageData());
+        }
+    }
+
+    /**
+     * Images of at least {@code pixels} decoded pixels (after cropping, before scaling) are decoded with libwebp's
+     * worker thread, which mostly helps large lossy images. 0 disables threaded decoding, which is the default.
+     */
+    public static void setDefaultThreadingThreshold(long pixels) {
+        if (pixels < 0) throw new IllegalArgumentException("pixels must not be negative");
+        defaultThreadingThreshold = pixels;
+    }
+
+    /**
+     * Frames are returned as {@code RGBA_PRE} decoded by libwebp straight to premultiplied color, which spares
+     * JavaFX its own premultiplication pass before texture upload. Disabled by default.
+     */
+    public static void setDefaultPremultipliedOutput(boolean enabled) {
+        defaultPremultipliedOutput = enabled;
+    }
+
+    /**
+     * Listener receiving per-phase durations and sizes of every decode, {@code null} disables metrics
+     * at no cost. {@link WebPMetricsAggregator} collects latency histograms.
+     */
+    public static void setMetricsListener(WebPMetricsListener listener) {
+        WebPMetrics.setListener(listener);
+    }
+
+    /**
+     * Selects the native binding for all subsequent calls, {@link WebPBackend#FFM} requires Java 22 or later
+     * and should be combined with {@code --enable-native-access}
+     *
+     * @throws UnsupportedOperationException if the backend is not available on this runtime
+     */
+    public static void setNativeBackend(WebPBackend backend) {
+        WebPFactory.setBackend(backend);
+    }
+
+    /**
+     * Dimensions, frame count, duration and flags read from headers only, no pixels are decoded.
+     * The stream is closed afterwards.
+     */
+    public static WebPInfo probe(InputStream stream) throws IOException {
+        return WebPFactory.probe(stream);
+    }
+
+    /**
+     * Decodes the first frame once, at the largest requested size with native scaling, and derives smaller
+     * renditions by box-filter halving. Every size limits the longest edge, images are not upscaled.
+     * Renditions are re-encoded when {@code options} are given. The stream is closed afterwards.
+     */
+    public static List<WebPRendition> renditions(InputStream stream, WebPEncoderOptions options, int... sizes) throws IOException {
+        return WebPPyramid.create(stream, options, sizes);
+    }
+
+    /**
+     * Extracts and loads libwebp and decodes tiny images on a daemon thread, so that the first real decode does not
+     * pay for native library setup. The future fails if libwebp cannot be loaded.
+     */
+    public static CompletableFuture<Void> warmUp() {
+        return WebPWarmUp.start();
+    }
+
+    /**
+     * Same as {@link #warmUp()}, run on {@code executor}
+     */
+    public static CompletableFuture<Void> warmUp(Executor executor) {
+        return WebPWarmUp.start(executor);
+    }
+
+    public WebPLoader(InputStream stream) {
         super(stream);
     }
 
+    /**
+     * Still images are decoded progressively while the stream is read and the listener receives decoded rows.
+     * Has no effect on animations.
+     */
+    public void setProgressListener(WebPProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Threaded decoding threshold of this loader, see {@link #setDefaultThreadingThreshold(long)}, applies to the following
+     * {@code decode} calls. Negative value uses the default one.
+     */
+    public void setThreadingThreshold(long pixels) {
+        this.threadingThreshold = pixels;
+    }
+
+    /**
+     * Premultiplied output of this loader, see {@link #setDefaultPremultipliedOutput(boolean)}
+     */
+    public void setPremultipliedOutput(boolean enabled) {
+        this.premultipliedOutput = enabled;
+    }
+
+    /**
+     * Cancels frames scheduled for decode-ahead, e.g. when playback stops. Frames that are already being decoded
+     * are finished and discarded, their buffers go back to the pool.
+     */
+    public void cancelDecodeAhead() {
+        if (decodeAhead != null) {
+            decodeAhead.cancel();
+        }
+    }
+
+    /**
+     * Canvas area changed by the last composited frame, in canvas coordinates. Native compositing always reports
+     * the whole canvas.
+     */
+    public WebPRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+
+    /**
+     * Read-only view of the persistent canvas of the Java compositor, {@code null} when it is not used
+     */
+    public ByteBuffer getCanvas() {
+        return compositor != null ? compositor.getCanvas() : null;
+    }
+
     @Override
     public IIOImageFrame decode(int imageIndex, int rWidth, int rHeight, boolean preserveAspectRatio, boolean smooth) throws IOException {
-        if (webpChunk == null) {
-            webpChunk = WebPFactory.demux(super.stream);
+        return decode(imageIndex, null, rWidth, rHeight, preserveAspectRatio, smooth);
+    }
+
+    /**
+     * Decodes only the given region of the image (or of the animation frame), {@code rWidth} and {@code rHeight}
+     * are applied to the region size. Cost of decoding is proportional to the region instead of the whole image.
+     * <p>
+     * The loader is closed when reading fails with an {@link IOException} and when {@code null} is returned for the
+     * index following the last frame, which is how IIO ends a load. Argument errors and indices further out leave
+     * the loader usable.
+     *
+     * @throws IllegalArgumentException if {@code imageIndex} is negative or {@code region} is outside of the image
+     */
+    public IIOImageFrame decode(int imageIndex, WebPRegion region, int rWidth, int rHeight, boolean preserveAspectRatio, boolean smooth) throws IOException {
+        if (closed) throw new IllegalStateException("loader is closed");
+        if (imageIndex < 0) throw new IllegalArgumentException("imageIndex must not be negative");
+        IIOImageFrame imageFrame;
+        boolean end;
+        try {
+            imageFrame = decodeCached(imageIndex, region, rWidth, rHeight, preserveAspectRatio, smooth);
+            end = imageFrame == null && isEnd(imageIndex);
+        } catch (IOException e) {
+            try {
+                close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
+        if (end) {
+            close();
+        }
+        return imageFrame;
+    }
+
+    // Regions are relative to the canvas of composited animations and to the frame rectangle of raw frames
+    private void checkRegion(int imageIndex, WebPRegion region) throws IOException {
+        int[] size = new int[2];
+        VP8XChunk vp8xChunk = index.getVP8XChunk();
+        if (index.isAnimated() && !animationCompositing) {
+            WebPIndex.Frame frame = index.getFrame(imageIndex);
+            if (frame == null) return;
+            size[0] = frame.getFrameWidth();
+            size[1] = frame.getFrameHeight();
+        } else if (vp8xChunk != null) {
+            size[0] = vp8xChunk.getCanvasWidth();
+            size[1] = vp8xChunk.getCanvasHeight();
+        } else {
+            WebPFactory.getInfo(index.getSource().readFully(0, (int) Math.min(index.getLength(), 32)), size);
+        }
+        if (region.clip(size[0], size[1]) == null) throw new IllegalArgumentException("region is outside of the image");
+    }
+
+    // First index past the frames, still images have one
+    private boolean isEnd(int imageIndex) throws IOException {
+        if (imageIndex == 0) return true;
+        return index.isAnimated() ? index.getFrame(imageIndex - 1) != null : imageIndex == 1;
+    }
+
+    /**
+     * Closes the stream and releases native decoder state. Done automatically at the end of the frames and
+     * when reading fails, see {@link #decode(int, WebPRegion, int, int, boolean, boolean)}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        cancelDecodeAhead();
+        if (animDecoder != null) {
+            animDecoder.close();
+            animDecoder = null;
+        }
+        if (index != null) {
+            index.close();
+        } else {
+            super.stream.close();
+        }
+    }
+
+    private IIOImageFrame decodeCached(int imageIndex, WebPRegion region, int rWidth, int rHeight, boolean preserveAspectRatio, boolean smooth) throws IOException {
+        WebPFrameEvent event = WebPFrameEvent.start();
+        if (index == null) {
+            index = WebPFactory.index(super.stream);
+        }
+        if (region != null) {
+            checkRegion(imageIndex, region);
+        }
+
+        WebPFrameCache cache = frameCache;
+        if (cache == null) {
+            return decodeFrame(imageIndex, new Target(region, rWidth, rHeight, preserveAspectRatio, smooth, bufferPool, threadingThreshold(), premultipliedOutput()), event);
+        }
+        if (contentDigest == null) {
+            contentDigest = new WebPFrameCache.ContentDigest(index.getSource());
+        }
+        WebPFrameCache.Content content = contentDigest.digest(contentLength(imageIndex));
+        boolean composited = index.isAnimated() && animationCompositing;
+        boolean premultiplied = premultipliedOutput();
+        WebPFrameCache.Key key = new WebPFrameCache.Key(content, imageIndex, region, rWidth, rHeight, preserveAspectRatio, smooth, composited, premultiplied);
+        IIOImageFrame imageFrame = cache.get(key);
+        if (imageFrame != null) {
+            if (composited) {
+                // Compositor state is not advanced by cached frames
+                VP8XChunk vp8xChunk = index.getVP8XChunk();
+                dirtyRegion = new WebPRegion(0, 0, vp8xChunk.getCanvasWidth(), vp8xChunk.getCanvasHeight());
+            }
+            event.commit(imageIndex, imageFrame.getWidth(), imageFrame.getHeight(), 0, 0,
+                    index.isAnimated(), composited, true, (long) imageFrame.getStride() * imageFrame.getHeight());
+            return imageFrame;
+        }
+        // Cached pixels are shared, they must never go back to the pool
+        imageFrame = decodeFrame(imageIndex, new Target(region, rWidth, rHeight, preserveAspectRatio, smooth, null, threadingThreshold(), premultiplied), event);
+        if (imageFrame != null) {
+            cache.put(key, imageFrame);
+        }
+        return imageFrame;
+    }
+
+    // Bytes a frame depends on, frames of an animation do not depend on later frames and trailing metadata
+    private long contentLength(int imageIndex) throws IOException {
+        if (index.isAnimated()) {
+            WebPIndex.Frame frame = index.getFrame(imageIndex);
+            if (frame != null) return frame.getEndOffset();
+        }
+        return index.getLength();
+    }
+
+    private IIOImageFrame decodeFrame(int imageIndex, Target target, WebPFrameEvent event) throws IOException {
+        PixelData pixelData = decodePixels(imageIndex, target);
+        if (pixelData == null) {
+            return null;
+        }
+        IIOImageFrame imageFrame = toImageFrame(imageIndex, pixelData, target);
+        event.commit(imageIndex, imageFrame.getWidth(), imageFrame.getHeight(), pixelData.sourceWidth, pixelData.sourceHeight,
+                index.isAnimated(), index.isAnimated() && animationCompositing, false, (long) imageFrame.getStride() * imageFrame.getHeight());
+        return imageFrame;
+    }
+
+    private IIOImageFrame toImageFrame(int imageIndex, PixelData pixelData, Target target) {
 
-        PixelData pixelData = decodePixels(imageIndex);
         IIOImageFrame imageFrame = new IIOImageFrame(
-                IIOImageType.RGBA,
-                ByteBuffer.wrap(pixelData.pixels),
+                target.premultiplied() ? IIOImageType.RGBA_PRE : IIOImageType.RGBA,
+                pixelData.pixels,
                 pixelData.width, pixelData.height,
                 pixelData.width * 4, null,
                 new IIOImageMetadata(
                         null, null, null, null, null, pixelData.frameDuration, pixelData.loopCount,
-                        pixelData.width, pixelData.height,
+                        pixelData.sourceWidth, pixelData.sourceHeight,
                         null, null, null
                 )
         );
+        if (pixelData.scaled) {
+            return imageFrame;
+        }
 
-        int[] outWH = IIOImageTools.computeDimensions(imageFrame.getWidth(), imageFrame.getHeight(), rWidth, rHeight, preserveAspectRatio);
-        rWidth = outWH[0];
-        rHeight = outWH[1];
-
-        return imageFrame.getWidth() != rWidth || imageFrame.getHeight() != rHeight
-                ? IIOImageTools.scaleImageFrame(imageFrame, rWidth, rHeight, smooth)
-                : imageFrame;
-    }
-
-    private PixelData decodePixels(int imageIndex) {
-        int loopCount = webpChunk.subchunks()
-                .stream()
-                .filter(chunk -> chunk instanceof ANIMChunk)
-                .map(ANIMChunk.class::cast)
-                .mapToInt(ANIMChunk::getLoopCount)
-                .findFirst()
-                .orElse(0);
-
-        List<Chunk> frameChunks = webpChunk.subchunks()
-                .stream()
-                .filter(chunk -> chunk instanceof ANMFChunk)
-                .toList();
-
-        if (!frameChunks.isEmpty()) {
-            for (int i = 0; i < frameChunks.size(); i++) {
-                if (i == imageIndex) {
-                    ANMFChunk anmfChunk = (ANMFChunk) frameChunks.get(i);
-
-                    ALPHChunk alphChunk = null;
-                    VP8Chunk vp8Chunk = null;
-                    int[] size = new int[2];
-
-                    for (Chunk framesubchunk : anmfChunk.subchunks()) {
-                        if (framesubchunk instanceof VP8LChunk bitstreamChunk) {
-                            byte[] pixels = WebPFactory.decodeRGBA(bitstreamChunk, size);
-                            return new PixelData(pixels, size[0], size[1], anmfChunk.getFrameDuration(), loopCount);
-                        } else if (framesubchunk instanceof ALPHChunk chunk) {
-                            alphChunk = chunk;
-                        } else if (framesubchunk instanceof VP8Chunk chunk) {
-                            vp8Chunk = chunk;
-                        }
-                    }
-
-                    // Decoding of Alpha chunk with VP8 chunk
-                    if (alphChunk != null && vp8Chunk != null) {
-                        byte[] pixels = WebPFactory.decodeRGBA(alphChunk, vp8Chunk, size);
-                        return new PixelData(pixels, size[0], size[1], anmfChunk.getFrameDuration(), loopCount);
-                    }
-                    // Decoding of VP8 chunk without Alpha chunk
-                    else if (vp8Chunk != null) {
-                        byte[] pixels = WebPFactory.decodeRGBA(vp8Chunk, size);
-                        return new PixelData(pixels, size[0], size[1], anmfChunk.getFrameDuration(), loopCount);
-                    }
-                }
+        int[] outWH = IIOImageTools.computeDimensions(imageFrame.getWidth(), imageFrame.getHeight(), target.width(), target.height(), target.preserveAspectRatio());
+        if (imageFrame.getWidth() == outWH[0] && imageFrame.getHeight() == outWH[1]) {
+            return imageFrame;
+        }
+        WebPScaleEvent event = WebPScaleEvent.start();
+        long start = WebPMetrics.start();
+        IIOImageFrame scaledFrame = IIOImageTools.scaleImageFrame(imageFrame, outWH[0], outWH[1], target.smooth());
+        WebPMetrics.record(WebPPhase.SCALE, start, 0, (long) outWH[0] * outWH[1], 0);
+        event.commit(imageIndex, imageFrame.getWidth(), imageFrame.getHeight(), outWH[0], outWH[1], target.smooth());
+        release(target, pixelData.pixels);
+        return scaledFrame;
+    }
+
+    private PixelData decodePixels(int imageIndex, Target target) throws IOException {
+        if (index.isAnimated()) {
+            if (animationCompositing) {
+                PixelData pixelData = WebPAnimDecoder.isAvailable() ? decodeComposited(imageIndex, target) : compose(imageIndex, target);
+                return pixelData != null && target.region() != null ? crop(pixelData, target) : pixelData;
+            }
+
+            if (decodeAheadExecutor != null) {
+                return decodeAhead(imageIndex, target);
+            }
+
+            // Only the requested frame payload is read, other frames are just indexed
+            ANMFChunk anmfChunk = index.loadFrame(imageIndex);
+            if (anmfChunk != null) {
+                return decodeFrame(anmfChunk, index.getLoopCount(), target);
             }
         } else if (imageIndex == 0) {
-//            ALPHChunk alphChunk = null;
-            for (Chunk webpChunk : webpChunk.subchunks()) {
-//                if (webpChunk instanceof ALPHChunk chunk) {
-//                    alphChunk = chunk;
-//                }
-
-                // FIXME: decoding of VP8(L) + ALPH is not working as expected
-                // Decoding VP8/VP8L with ALPH chunks
-//                if (alphChunk != null && webpChunk instanceof VP8Chunk vp8Chunk) {
-//                    int[] size = new int[2];
-//                    byte[] pixels = WebPFactory.decodeRGBA(alphChunk, vp8Chunk, size);
-//                    return new PixelData(pixels, size[0], size[1]);
-//                }
+            if (progressListener != null) {
+                return decodeProgressive(target);
+            }
+
+            ALPHChunk alphChunk = null;
+            for (Chunk webpChunk : index.loadImageChunks()) {
+                if (webpChunk instanceof ALPHChunk chunk) {
+                    alphChunk = chunk;
+                }
+
+                // Decoding VP8 with ALPH chunk
+                if (alphChunk != null && webpChunk instanceof VP8Chunk vp8Chunk) {
+                    return decodeRGBA(alphChunk, vp8Chunk, target);
+                }
 
                 // Decoding VP8/VP8L chunk
                 if (webpChunk instanceof BitstreamChunk bitstreamChunk) {
-                    int[] size = new int[2];
-                    byte[] pixels = WebPFactory.decodeRGBA(bitstreamChunk, size);
-                    return new PixelData(pixels, size[0], size[1]);
+                    return decodeRGBA(null, bitstreamChunk, target);
                 }
             }
         }
@@ -125,25 +421,347 @@ public class WebPLoader extends IIOLoader {
         return null;
     }
 
+    // Payloads are read on the caller thread, only native decoding of independent frames runs on the executor
+    private PixelData decodeAhead(int imageIndex, Target target) throws IOException {
+        if (decodeAhead == null || decodeAhead.getWindow() != decodeAheadFrames || !target.equals(decodeAheadTarget)) {
+            cancelDecodeAhead();
+            decodeAhead = new WebPDecodeAhead<>(decodeAheadExecutor, decodeAheadFrames, pixelData -> release(target, pixelData.pixels));
+            decodeAheadTarget = target;
+        }
+        decodeAhead.retain(imageIndex);
+
+        int loopCount = index.getLoopCount();
+        for (int i = imageIndex + 1; i <= imageIndex + decodeAhead.getWindow(); i++) {
+            if (decodeAhead.isScheduled(i)) continue;
+            ANMFChunk anmfChunk = index.loadFrame(i);
+            if (anmfChunk == null) break;
+            decodeAhead.schedule(i, () -> decodeFrame(anmfChunk, loopCount, target));
+        }
+
+        PixelData pixelData = decodeAhead.take(imageIndex);
+        if (pixelData != null) {
+            return pixelData;
+        }
+        ANMFChunk anmfChunk = index.loadFrame(imageIndex);
+        return anmfChunk != null ? decodeFrame(anmfChunk, loopCount, target) : null;
+    }
+
+    private static PixelData decodeFrame(ANMFChunk anmfChunk, int loopCount, Target target) throws IOException {
+        ALPHChunk alphChunk = null;
+        VP8Chunk vp8Chunk = null;
+        for (Chunk framesubchunk : anmfChunk.subchunks()) {
+            if (framesubchunk instanceof VP8LChunk bitstreamChunk) {
+                return decodeRGBA(null, bitstreamChunk, target).setAnimation(anmfChunk.getFrameDuration(), loopCount);
+            } else if (framesubchunk instanceof ALPHChunk chunk) {
+                alphChunk = chunk;
+            } else if (framesubchunk instanceof VP8Chunk chunk) {
+                vp8Chunk = chunk;
+            }
+        }
+
+        // Decoding of Alpha chunk with VP8 chunk
+        if (alphChunk != null && vp8Chunk != null) {
+            return decodeRGBA(alphChunk, vp8Chunk, target).setAnimation(anmfChunk.getFrameDuration(), loopCount);
+        }
+        // Decoding of VP8 chunk without Alpha chunk
+        else if (vp8Chunk != null) {
+            return decodeRGBA(null, vp8Chunk, target).setAnimation(anmfChunk.getFrameDuration(), loopCount);
+        }
+        return null;
+    }
+
+    private PixelData decodeComposited(int imageIndex, Target target) throws IOException {
+        // Output mode and threading are fixed when the native decoder is created
+        int colorspace = colorspace(target);
+        VP8XChunk vp8xChunk = index.getVP8XChunk();
+        boolean threaded = isThreaded(target, (long) vp8xChunk.getCanvasWidth() * vp8xChunk.getCanvasHeight());
+        if (animDecoder != null && (animDecoder.getColorspace() != colorspace || animDecoder.isMultiThreaded() != threaded)) {
+            animDecoder.close();
+            animDecoder = null;
+        }
+        if (animDecoder == null) {
+            animDecoder = new WebPAnimDecoder(index, colorspace, threaded);
+        }
+        int width = animDecoder.getCanvasWidth();
+        int height = animDecoder.getCanvasHeight();
+        ByteBuffer pixels = allocate(target, width * height * 4);
+        long start = WebPMetrics.start();
+        boolean decoded;
+        try {
+            decoded = animDecoder.decodeFrame(imageIndex, pixels);
+        } catch (IOException | RuntimeException e) {
+            release(target, pixels);
+            throw e;
+        }
+        if (!decoded) {
+            release(target, pixels);
+            animDecoder.close();
+            animDecoder = null;
+            return null;
+        }
+        WebPMetrics.record(WebPPhase.COMPOSITE, start, 0, (long) width * height, 0);
+        dirtyRegion = new WebPRegion(0, 0, width, height);
+        return new PixelData(pixels, width, height, width, height, false)
+                .setAnimation(animDecoder.getFrameDuration(), animDecoder.getLoopCount());
+    }
+
+    private PixelData compose(int imageIndex, Target target) throws IOException {
+        if (index.getFrame(imageIndex) == null) {
+            return null;
+        }
+        if (compositor == null) {
+            VP8XChunk vp8xChunk = index.getVP8XChunk();
+            compositor = new WebPCompositor(vp8xChunk.getCanvasWidth(), vp8xChunk.getCanvasHeight());
+        }
+        if (imageIndex < compositor.getNextFrame()) {
+            compositor.reset();
+        }
+        int frameDuration = 0;
+        while (compositor.getNextFrame() <= imageIndex) {
+            ANMFChunk anmfChunk = index.loadFrame(compositor.getNextFrame());
+            compositor.compose(anmfChunk);
+            frameDuration = anmfChunk.getFrameDuration();
+        }
+        dirtyRegion = compositor.takeDirtyRegion();
+
+        // IIO keeps decoded frames, so the canvas itself can not be handed out
+        int width = compositor.getCanvasWidth();
+        int height = compositor.getCanvasHeight();
+        ByteBuffer pixels = allocate(target, width * height * 4);
+        long start = WebPMetrics.start();
+        if (target.premultiplied()) {
+            premultiply(compositor.getCanvas(), pixels);
+        } else {
+            pixels.put(compositor.getCanvas()).flip();
+        }
+        WebPMetrics.record(WebPPhase.COPY, start, 0, (long) width * height, 0);
+        return new PixelData(pixels, width, height, width, height, false)
+                .setAnimation(frameDuration, index.getLoopCount());
+    }
+
+    private static PixelData crop(PixelData pixelData, Target target) {
+        WebPRegion region = target.region();
+        if (region.covers(pixelData.width, pixelData.height)) return pixelData;
+        WebPRegion crop = region.clip(pixelData.width, pixelData.height);
+        if (crop == null) throw new IllegalArgumentException("region is outside of the image");
+        ByteBuffer pixels = allocate(target, crop.width() * crop.height() * 4);
+        long start = WebPMetrics.start();
+        for (int y = 0; y < crop.height(); y++) {
+            int offset = ((crop.y() + y) * pixelData.width + crop.x()) * 4;
+            pixels.put(pixelData.pixels.slice(offset, crop.width() * 4));
+        }
+        pixels.flip();
+        WebPMetrics.record(WebPPhase.COPY, start, 0, (long) crop.width() * crop.height(), 0);
+        release(target, pixelData.pixels);
+        PixelData cropped = new PixelData(pixels, crop.width(), crop.height(), pixelData.sourceWidth, pixelData.sourceHeight, false);
+        cropped.frameDuration = pixelData.frameDuration;
+        cropped.loopCount = pixelData.loopCount;
+        return cropped;
+    }
+
+    // Whole container is fed to libwebp in blocks as they are read, rows are reported as soon as they are decoded
+    private PixelData decodeProgressive(Target target) throws IOException {
+        WebPSource source = index.getSource();
+        long length = index.getLength();
+        int[] size = new int[2];
+        VP8XChunk vp8xChunk = index.getVP8XChunk();
+        if (vp8xChunk != null) {
+            size[0] = vp8xChunk.getCanvasWidth();
+            size[1] = vp8xChunk.getCanvasHeight();
+        } else {
+            WebPFactory.getInfo(source.readFully(0, (int) Math.min(length, 32)), size);
+        }
+        int sourceWidth = size[0];
+        int sourceHeight = size[1];
+        // Bitstream format is not known before the data is fed, the crop is treated as lossy
+        int[] skip = new int[2];
+        WebPDecodeOptions options = decodeOptions(target, size, true, skip);
+
+        int width = size[0];
+        int height = size[1];
+        int skipX = skip[0];
+        int skipY = skip[1];
+        int stride = (width + skipX) * 4;
+        ByteBuffer pixels = allocate(target, stride * (height + skipY));
+        ByteBuffer view = pixels.asReadOnlyBuffer().position(skipY * stride + skipX * 4).slice();
+        try (WebPIncrementalDecoder decoder = new WebPIncrementalDecoder(colorspace(target), options, pixels, stride)) {
+            byte[] buf = new byte[16 * 1024];
+            long position = 0;
+            int rows = 0;
+            while (!decoder.isDone()) {
+                if (position >= length) throw new EOFException();
+                int count = source.read(position, buf, 0, (int) Math.min(buf.length, length - position));
+                if (count < 0) throw new EOFException();
+                position += count;
+                long start = WebPMetrics.start();
+                decoder.append(buf, count);
+                int decodedRows = decoder.getDecodedRows();
+                WebPMetrics.record(WebPPhase.DECODE, start, count, (long) Math.max(0, decodedRows - rows) * (width + skipX), 0);
+                if (decodedRows > rows) {
+                    rows = decodedRows;
+                    if (rows > skipY) progressListener.rowsDecoded(view.duplicate(), width, height, stride, rows - skipY);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            release(target, pixels);
+            throw e;
+        }
+        skip(pixels, size, skip);
+        return new PixelData(pixels, width, height, sourceWidth, sourceHeight, options.isScaling());
+    }
+
+    // libwebp crops and scales while decoding and writes straight into the direct buffer that is later handed to IIOImageFrame
+    private static PixelData decodeRGBA(ALPHChunk alphChunk, BitstreamChunk chunk, Target target) throws IOException {
+        int[] size = new int[2];
+        if (alphChunk != null) {
+            WebPFactory.getInfo(alphChunk, (VP8Chunk) chunk, size);
+        } else {
+            WebPFactory.getInfo(chunk, size);
+        }
+        int sourceWidth = size[0];
+        int sourceHeight = size[1];
+        int[] skip = new int[2];
+        WebPDecodeOptions options = decodeOptions(target, size, chunk instanceof VP8Chunk, skip);
+
+        int stride = (size[0] + skip[0]) * 4;
+        ByteBuffer pixels = allocate(target, stride * (size[1] + skip[1]));
+        try {
+            if (alphChunk != null && target.premultiplied()) {
+                WebPFactory.decodePremultipliedRGBAInto(alphChunk, (VP8Chunk) chunk, options, pixels, stride);
+            } else if (alphChunk != null) {
+                WebPFactory.decodeRGBAInto(alphChunk, (VP8Chunk) chunk, options, pixels, stride);
+            } else if (target.premultiplied()) {
+                WebPFactory.decodePremultipliedRGBAInto(chunk, options, pixels, stride);
+            } else {
+                WebPFactory.decodeRGBAInto(chunk, options, pixels, stride);
+            }
+        } catch (IOException | RuntimeException e) {
+            release(target, pixels);
+            throw e;
+        }
+        skip(pixels, size, skip);
+        return new PixelData(pixels, size[0], size[1], sourceWidth, sourceHeight, options.isScaling());
+    }
+
+    /*
+     * Source dimensions in, output dimensions out, skip receives the leading column and row that skip() drops. libwebp silently
+     * moves the crop origin of VP8 data to even coordinates, an odd origin is decoded one column or row earlier and the
+     * extra one is dropped afterwards, such crops are never scaled by libwebp.
+     */
+    private static WebPDecodeOptions decodeOptions(Target target, int[] size, boolean lossy, int[] skip) {
+        int sourceWidth = size[0];
+        int sourceHeight = size[1];
+        WebPDecodeOptions options = new WebPDecodeOptions();
+        if (target.region() != null && !target.region().covers(sourceWidth, sourceHeight)) {
+            WebPRegion crop = target.region().clip(sourceWidth, sourceHeight);
+            if (crop == null) throw new IllegalArgumentException("region is outside of the image");
+            int skipX = lossy ? crop.x() & 1 : 0;
+            int skipY = lossy ? crop.y() & 1 : 0;
+            options.setCrop(new WebPRegion(crop.x() - skipX, crop.y() - skipY, crop.width() + skipX, crop.height() + skipY));
+            size[0] = crop.width();
+            size[1] = crop.height();
+            skip[0] = skipX;
+            skip[1] = skipY;
+        }
+        options.setMultiThreaded(isThreaded(target, (long) (size[0] + skip[0]) * (size[1] + skip[1])));
+
+        // libwebp only provides area-averaging scaler, non-smooth scaling is left to IIOImageTools
+        if (target.smooth() && skip[0] == 0 && skip[1] == 0) {
+            int[] outWH = IIOImageTools.computeDimensions(size[0], size[1], target.width(), target.height(), target.preserveAspectRatio());
+            if (outWH[0] != size[0] || outWH[1] != size[1]) {
+                options.setScaledSize(outWH[0], outWH[1]);
+                size[0] = outWH[0];
+                size[1] = outWH[1];
+            }
+        }
+        return options;
+    }
+
+    // Moves the rows of an odd-origin crop over the leading column and row decoded by libwebp
+    private static void skip(ByteBuffer pixels, int[] size, int[] skip) {
+        int skipX = skip[0];
+        int skipY = skip[1];
+        if (skipX == 0 && skipY == 0) return;
+        int rowBytes = size[0] * 4;
+        int stride = rowBytes + skipX * 4;
+        byte[] row = new byte[rowBytes];
+        for (int y = 0; y < size[1]; y++) {
+            pixels.get((y + skipY) * stride + skipX * 4, row);
+            pixels.put(y * rowBytes, row);
+        }
+        pixels.limit(rowBytes * size[1]);
+    }
+
+    private long threadingThreshold() {
+        return threadingThreshold >= 0 ? threadingThreshold : defaultThreadingThreshold;
+    }
+
+    private boolean premultipliedOutput() {
+        return premultipliedOutput != null ? premultipliedOutput : defaultPremultipliedOutput;
+    }
+
+    private static int colorspace(Target target) {
+        return target.premultiplied() ? WebP.MODE_rgbA : WebP.MODE_RGBA;
+    }
+
+    // Java compositor blends straight alpha, its canvas is premultiplied while it is copied out
+    private static void premultiply(ByteBuffer canvas, ByteBuffer pixels) {
+        int count = canvas.remaining();
+        for (int i = 0; i < count; i += 4) {
+            int a = canvas.get(i + 3) & 0xFF;
+            if (a == 0xFF) {
+                pixels.putInt(i, canvas.getInt(i));
+            } else {
+                pixels.put(i, (byte) (((canvas.get(i) & 0xFF) * a + 127) / 255))
+                        .put(i + 1, (byte) (((canvas.get(i + 1) & 0xFF) * a + 127) / 255))
+                        .put(i + 2, (byte) (((canvas.get(i + 2) & 0xFF) * a + 127) / 255))
+                        .put(i + 3, (byte) a);
+            }
+        }
+        pixels.limit(count);
+    }
+
+    private static boolean isThreaded(Target target, long pixels) {
+        return target.threadingThreshold() > 0 && pixels >= target.threadingThreshold();
+    }
+
+    private static ByteBuffer allocate(Target target, int size) {
+        return target.pool() != null ? target.pool().acquire(size, true) : ByteBuffer.allocateDirect(size);
+    }
+
+    private static void release(Target target, ByteBuffer pixels) {
+        if (target.pool() != null) {
+            target.pool().release(pixels);
+        }
+    }
+
+    private record Target(WebPRegion region, int width, int height, boolean preserveAspectRatio, boolean smooth, WebPBufferPool pool,
+                          long threadingThreshold, boolean premultiplied) {
+    }
+
     private static class PixelData {
-        byte[] pixels;
+        ByteBuffer pixels;
         int width;
         int height;
+        int sourceWidth;
+        int sourceHeight;
+        boolean scaled;
         Integer frameDuration;
         Integer loopCount;
 
-        PixelData(byte[] pixels, int width, int height) {
+        PixelData(ByteBuffer pixels, int width, int height, int sourceWidth, int sourceHeight, boolean scaled) {
             this.pixels = pixels;
             this.width = width;
             this.height = height;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.scaled = scaled;
         }
 
-        PixelData(byte[] pixels, int width, int height, int frameDuration, int loopCount) {
-            this.pixels = pixels;
-            this.width = width;
-            this.height = height;
+        PixelData setAnimation(int frameDuration, int loopCount) {
             this.frameDuration = frameDuration;
             this.loopCount = loopCount;
+            return this;
         }
     }
 }
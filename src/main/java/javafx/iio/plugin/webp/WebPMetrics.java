@@ -0,0 +1,36 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Dispatches measurements to the registered listener. Without a listener every call is a single volatile read,
+ * clock is not even queried.
+ */
+final class WebPMetrics {
+
+    private static volatile WebPMetricsListener listener;
+
+    private WebPMetrics() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void setListener(WebPMetricsListener listener) {
+        WebPMetrics.listener = listener;
+    }
+
+    /**
+     * Start timestamp of a phase, {@code 0} when metrics are disabled
+     */
+    static long start() {
+        return listener != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports phase started at {@code start} and returns start timestamp of the next phase
+     */
+    static long record(WebPPhase phase, long start, long bytesRead, long pixels, long nativeBytes) {
+        WebPMetricsListener listener = WebPMetrics.listener;
+        if (listener == null || start == 0) return 0;
+        long now = System.nanoTime();
+        listener.phaseCompleted(phase, now - start, bytesRead, pixels, nativeBytes);
+        return now;
+    }
+}
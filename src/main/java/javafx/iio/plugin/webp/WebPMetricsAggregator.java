@@ -0,0 +1,115 @@
+package javafx.iio.plugin.webp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Built-in {@link WebPMetricsListener} collecting totals and latency histograms per phase. Histogram buckets are
+ * powers of two nanoseconds, so percentiles are upper bounds within a factor of two.
+ */
+public final class WebPMetricsAggregator implements WebPMetricsListener {
+
+    private static final int BUCKETS = 64;
+
+    private volatile Stats[] stats = newStats();
+
+    @Override
+    public void phaseCompleted(WebPPhase phase, long durationNanos, long bytesRead, long pixels, long nativeBytes) {
+        Stats s = stats[phase.ordinal()];
+        s.count.increment();
+        s.nanos.add(durationNanos);
+        s.bytesRead.add(bytesRead);
+        s.pixels.add(pixels);
+        s.nativeBytes.add(nativeBytes);
+        s.histogram.incrementAndGet(bucket(durationNanos));
+    }
+
+    public long getCount(WebPPhase phase) {
+        return stats[phase.ordinal()].count.sum();
+    }
+
+    public long getTotalNanos(WebPPhase phase) {
+        return stats[phase.ordinal()].nanos.sum();
+    }
+
+    public long getBytesRead(WebPPhase phase) {
+        return stats[phase.ordinal()].bytesRead.sum();
+    }
+
+    public long getPixels(WebPPhase phase) {
+        return stats[phase.ordinal()].pixels.sum();
+    }
+
+    public long getNativeBytes(WebPPhase phase) {
+        return stats[phase.ordinal()].nativeBytes.sum();
+    }
+
+    /**
+     * Number of measurements per bucket, bucket {@code i} holds durations in {@code [2^(i-1), 2^i)} nanoseconds
+     */
+    public long[] getHistogram(WebPPhase phase) {
+        AtomicLongArray histogram = stats[phase.ordinal()].histogram;
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Upper bound of the given percentile ({@code 0..100}) in nanoseconds, {@code 0} without measurements
+     */
+    public long getPercentileNanos(WebPPhase phase, double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("percentile must be in 0..100");
+        long[] histogram = getHistogram(phase);
+        long total = 0;
+        for (long count : histogram) total += count;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank) return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        stats = newStats();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (WebPPhase phase : WebPPhase.values()) {
+            long count = getCount(phase);
+            if (count == 0) continue;
+            sb.append(String.format("%-9s count=%d total=%.3fms p50<=%.3fms p99<=%.3fms bytes=%d pixels=%d native=%d%n",
+                    phase, count, getTotalNanos(phase) / 1e6,
+                    getPercentileNanos(phase, 50) / 1e6, getPercentileNanos(phase, 99) / 1e6,
+                    getBytesRead(phase), getPixels(phase), getNativeBytes(phase)));
+        }
+        return sb.toString();
+    }
+
+    private static Stats[] newStats() {
+        Stats[] stats = new Stats[WebPPhase.values().length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+        return stats;
+    }
+
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    private static final class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder pixels = new LongAdder();
+        final LongAdder nativeBytes = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    }
+}
@@ -0,0 +1,17 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Receives per-phase measurements of decoding, see {@link WebPLoader#setMetricsListener(WebPMetricsListener)}.
+ * Called synchronously on the decoding thread, implementations have to be thread-safe and fast.
+ */
+@FunctionalInterface
+public interface WebPMetricsListener {
+
+    /**
+     * @param durationNanos wall time of the phase
+     * @param bytesRead     compressed bytes consumed by the phase
+     * @param pixels        pixels produced by the phase
+     * @param nativeBytes   native memory allocated by the phase
+     */
+    void phaseCompleted(WebPPhase phase, long durationNanos, long bytesRead, long pixels, long nativeBytes);
+}
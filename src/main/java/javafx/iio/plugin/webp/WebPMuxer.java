@@ -0,0 +1,361 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import static javafx.iio.plugin.webp.chunks.ANMFChunk.ANMF;
+import static javafx.iio.plugin.webp.chunks.WebPChunk.RIFF;
+import static javafx.iio.plugin.webp.chunks.WebPChunk.WEBP;
+import static javafx.iio.plugin.webp.utils.WebPUtils.*;
+
+/**
+ * Single pass RIFF writer. Headers and small fields go through one reusable buffer, large payloads are handed to the
+ * channel with gathering writes. Sizes of chunks opened without a declared size are back-patched when the chunk
+ * is ended, which for bytes already written needs a {@link FileChannel} target. For other targets everything following
+ * such a chunk is held in memory until it is ended.
+ */
+public final class WebPMuxer implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final FileChannel file;
+    private final Flushable flushable;
+    private final long origin;
+    private final ArrayDeque<OpenChunk> openChunks = new ArrayDeque<>();
+    private final OutputStream stream = new MuxerOutputStream();
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long flushed;
+    private int pinned;
+    private boolean closed;
+
+    public WebPMuxer(WritableByteChannel channel) throws IOException {
+        this(channel, null);
+    }
+
+    public WebPMuxer(OutputStream out) throws IOException {
+        this(out instanceof FileOutputStream fileOut ? fileOut.getChannel() : Channels.newChannel(out), out);
+    }
+
+    private WebPMuxer(WritableByteChannel channel, Flushable flushable) throws IOException {
+        this.channel = Objects.requireNonNull(channel);
+        this.file = channel instanceof FileChannel fileChannel ? fileChannel : null;
+        this.flushable = flushable;
+        this.origin = file != null ? file.position() : 0;
+    }
+
+    /**
+     * Bytes written so far, relative to the position of the target when the muxer was created
+     */
+    public long position() {
+        return flushed + buffer.position();
+    }
+
+    /**
+     * Opens the {@code RIFF} chunk and writes the {@code WEBP} tag
+     */
+    public void beginRiff() throws IOException {
+        beginChunk(RIFF);
+        writeFourCC(WEBP);
+    }
+
+    /**
+     * Opens a chunk, its size is back-patched by {@link #endChunk()}
+     */
+    public void beginChunk(byte[] fourCC) throws IOException {
+        beginChunk(fourCC, -1);
+    }
+
+    /**
+     * Opens a chunk of a known payload size, it is checked by {@link #endChunk()}. A negative size is patched later.
+     */
+    public void beginChunk(byte[] fourCC, long size) throws IOException {
+        checkOpen();
+        if (size >= 0) checkUInt32(size);
+        openChunks.push(new OpenChunk(position(), size));
+        writeFourCC(fourCC);
+        writeUInt32(Math.max(size, 0));
+        if (size < 0 && file == null) pinned++;
+    }
+
+    /**
+     * Closes the innermost chunk, patches its size and writes the padding byte
+     */
+    public void endChunk() throws IOException {
+        OpenChunk chunk;
+        try {
+            chunk = openChunks.pop();
+        } catch (NoSuchElementException e) {
+            throw new IllegalStateException("no open chunk");
+        }
+        long size = position() - chunk.offset() - 8;
+        if (chunk.size() >= 0) {
+            if (size != chunk.size()) {
+                throw new IllegalStateException("chunk payload is " + size + " bytes, declared " + chunk.size());
+            }
+        } else {
+            if (file == null) pinned--;
+            patchUInt32(chunk.offset() + 4, checkUInt32(size));
+        }
+        if (isOdd(size)) writeUInt8(0);
+    }
+
+    public int getOpenChunkCount() {
+        return openChunks.size();
+    }
+
+    /**
+     * Writes a whole chunk, payloads of buffer-backed chunks and of their containers are passed to the channel without copying
+     */
+    public void writeChunk(Chunk chunk) throws IOException {
+        Objects.requireNonNull(chunk);
+        if (chunk instanceof RawDataChunk rawDataChunk) {
+            writeChunk(rawDataChunk.getFourCC(), rawDataChunk.getData());
+        } else if (chunk instanceof RIFFChunk riffChunk) {
+            beginChunk(RIFF, riffChunk.getSize());
+            writeFourCC(riffChunk.getTag());
+            writeSubchunks(riffChunk);
+            endChunk();
+        } else if (chunk instanceof ANMFChunk anmfChunk) {
+            beginChunk(ANMF, anmfChunk.getSize());
+            writeUInt24(anmfChunk.getFrameX());
+            writeUInt24(anmfChunk.getFrameY());
+            write1Based(anmfChunk.getFrameWidth());
+            write1Based(anmfChunk.getFrameHeight());
+            writeUInt24(anmfChunk.getFrameDuration());
+            writeUInt8(anmfChunk.getFlags());
+            writeSubchunks(anmfChunk);
+            endChunk();
+        } else {
+            checkOpen();
+            chunk.write(stream);
+        }
+    }
+
+    private void writeSubchunks(LISTChunk chunk) throws IOException {
+        for (Chunk subchunk : chunk.subchunks()) {
+            writeChunk(subchunk);
+        }
+    }
+
+    public void writeChunk(byte[] fourCC, ByteBuffer payload) throws IOException {
+        beginChunk(fourCC, payload.remaining());
+        write(payload.duplicate());
+        endChunk();
+    }
+
+    /**
+     * Streams {@code size} bytes of payload, fails with {@link EOFException} if the stream ends earlier
+     */
+    public void writeChunk(byte[] fourCC, InputStream payload, long size) throws IOException {
+        if (size < 0) throw new IllegalArgumentException("size must not be negative");
+        beginChunk(fourCC, size);
+        transferFrom(payload, size);
+        endChunk();
+    }
+
+    /**
+     * Streams payload until the end of {@code payload}, the size is back-patched
+     */
+    public void writeChunk(byte[] fourCC, InputStream payload) throws IOException {
+        beginChunk(fourCC);
+        transferFrom(payload, -1);
+        endChunk();
+    }
+
+    /**
+     * Overwrites an already written little endian {@code uint32}
+     */
+    public void patchUInt32(long position, long value) throws IOException {
+        checkUInt32(value);
+        if (position < 0 || position + 4 > position()) throw new IllegalArgumentException("position is out of written range");
+        if (position >= flushed) {
+            buffer.putInt((int) (position - flushed), (int) value);
+            return;
+        }
+        if (file == null) throw new IllegalStateException("position was already written to the stream");
+        if (position + 4 > flushed) drain();
+        ByteBuffer patch = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, (int) value);
+        while (patch.hasRemaining()) {
+            file.write(patch, origin + position + patch.position());
+        }
+    }
+
+    public void writeFourCC(byte[] fourCC) throws IOException {
+        if (Objects.requireNonNull(fourCC).length != 4) throw new IllegalArgumentException("fourCC length must be 4");
+        ensure(4);
+        buffer.put(fourCC);
+    }
+
+    public void writeUInt8(int val) throws IOException {
+        ensure(1);
+        buffer.put((byte) val);
+    }
+
+    public void writeUInt16(int val) throws IOException {
+        ensure(2);
+        buffer.putShort((short) checkUInt16(val));
+    }
+
+    public void writeUInt24(int val) throws IOException {
+        checkUInt24(val);
+        ensure(3);
+        buffer.put((byte) val).put((byte) (val >>> 8)).put((byte) (val >>> 16));
+    }
+
+    public void writeUInt32(long val) throws IOException {
+        ensure(4);
+        buffer.putInt((int) checkUInt32(val));
+    }
+
+    /**
+     * Canvas and frame dimensions, stored minus one
+     */
+    public void write1Based(int val) throws IOException {
+        writeUInt24(checkUInt24(val) - 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes the remaining bytes of {@code src}, large buffers are written together with the pending buffer
+     * in one gathering write
+     */
+    public void write(ByteBuffer src) throws IOException {
+        checkOpen();
+        if (src.remaining() >= buffer.capacity() / 2 && canFlush()) {
+            buffer.flip();
+            long count = (long) buffer.remaining() + src.remaining();
+            if (channel instanceof GatheringByteChannel gathering) {
+                ByteBuffer[] buffers = {buffer, src};
+                while (src.hasRemaining()) {
+                    gathering.write(buffers);
+                }
+            } else {
+                writeFully(buffer);
+                writeFully(src);
+            }
+            flushed += count;
+            buffer.clear();
+            return;
+        }
+        if (src.remaining() <= buffer.remaining()) {
+            buffer.put(src);
+            return;
+        }
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining()) ensure(1);
+            int count = Math.min(src.remaining(), buffer.remaining());
+            buffer.put(src.slice().limit(count));
+            src.position(src.position() + count);
+        }
+    }
+
+    private void transferFrom(InputStream in, long size) throws IOException {
+        Objects.requireNonNull(in);
+        long remaining = size;
+        while (size < 0 || remaining > 0) {
+            if (!buffer.hasRemaining()) ensure(1);
+            int count = (int) Math.min(buffer.remaining(), size < 0 ? Integer.MAX_VALUE : remaining);
+            int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+            if (read < 0) {
+                if (size < 0) return;
+                throw new EOFException();
+            }
+            buffer.position(buffer.position() + read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Writes buffered bytes unless they are held for a pending size patch
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        if (canFlush()) drain();
+        if (flushable != null) flushable.flush();
+    }
+
+    /**
+     * Ends chunks left open, writes the buffered bytes and closes the target
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            while (!openChunks.isEmpty()) {
+                endChunk();
+            }
+            drain();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private boolean canFlush() {
+        return file != null || pinned == 0;
+    }
+
+    private void ensure(int count) throws IOException {
+        checkOpen();
+        if (buffer.remaining() >= count) return;
+        if (canFlush()) drain();
+        if (buffer.remaining() >= count) return;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + count)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        buffer = grown.put(buffer);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        flushed += buffer.remaining();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("muxer is closed");
+    }
+
+    private record OpenChunk(long offset, long size) {
+    }
+
+    // Target of Chunk.write, small writes of the chunk classes end up in the buffer
+    private final class MuxerOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            writeUInt8(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            WebPMuxer.this.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Phases reported to {@link WebPMetricsListener}
+ */
+public enum WebPPhase {
+    /**
+     * RIFF container and chunk header parsing
+     */
+    PARSE,
+    /**
+     * Reading of chunk payloads from the source
+     */
+    READ,
+    /**
+     * Native libwebp decoding
+     */
+    DECODE,
+    /**
+     * Copying of pixels out of libwebp owned memory or between Java buffers
+     */
+    COPY,
+    /**
+     * Animation frame compositing, for native compositing it includes decoding of the frame
+     */
+    COMPOSITE,
+    /**
+     * Rescaling with {@code IIOImageTools}
+     */
+    SCALE
+}
@@ -0,0 +1,28 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * libwebp encoder presets tuning filtering and segmentation for a kind of content, see {@link WebPEncoderOptions}
+ */
+public enum WebPPreset {
+    DEFAULT,
+    /**
+     * Digital picture, like portrait or inner shot
+     */
+    PICTURE,
+    /**
+     * Outdoor photograph with natural lighting
+     */
+    PHOTO,
+    /**
+     * Hand or line drawing with high-contrast details
+     */
+    DRAWING,
+    /**
+     * Small-sized colorful image
+     */
+    ICON,
+    /**
+     * Text-like content
+     */
+    TEXT
+}
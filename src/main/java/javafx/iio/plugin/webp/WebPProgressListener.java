@@ -0,0 +1,16 @@
+package javafx.iio.plugin.webp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives partially decoded still images while the compressed data is still being read
+ */
+@FunctionalInterface
+public interface WebPProgressListener {
+
+    /**
+     * Called whenever more rows become available. {@code pixels} is a read-only RGBA view of the final image buffer,
+     * only the first {@code decodedRows} rows are valid.
+     */
+    void rowsDecoded(ByteBuffer pixels, int width, int height, int stride, int decodedRows);
+}
@@ -0,0 +1,127 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.IIOImageFrame;
+import javafx.iio.IIOImageTools;
+import javafx.iio.IIOImageType;
+import javafx.iio.plugin.webp.chunks.Chunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Renditions of one image from a single decode. The largest level is decoded with libwebp scaling, smaller levels are
+ * derived by halving with a 2x2 box filter while possible and one final area-averaging step to the exact size.
+ */
+final class WebPPyramid {
+
+    private WebPPyramid() {
+    }
+
+    static List<WebPRendition> create(InputStream stream, WebPEncoderOptions options, int... sizes) throws IOException {
+        Objects.requireNonNull(stream);
+        Objects.requireNonNull(sizes);
+        if (sizes.length == 0) throw new IllegalArgumentException("no sizes requested");
+        for (int size : sizes) {
+            if (size <= 0) throw new IllegalArgumentException("sizes must be positive");
+        }
+        byte[] data;
+        try (stream) {
+            data = stream.readAllBytes();
+        }
+        WebPInfo info = WebPFactory.probe(new ByteArrayInputStream(data));
+
+        // Largest level first, images are never upscaled
+        Integer[] order = new Integer[sizes.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(sizes[b], sizes[a]));
+
+        int[] top = fit(info.width(), info.height(), sizes[order[0]]);
+        // Halving weights straight color by alpha and the encoder expects straight color
+        IIOImageFrame frame;
+        try (WebPLoader loader = new WebPLoader(new ByteArrayInputStream(data))) {
+            loader.setPremultipliedOutput(false);
+            frame = loader.decode(0, top[0], top[1], false, true);
+        }
+        if (frame == null) {
+            throw new IOException("No decodable image in WebP stream of " + info.width() + "x" + info.height());
+        }
+        Level level = new Level(frame.getWidth(), frame.getHeight(), toArray(frame));
+        // Pixels were copied, the buffer goes back only if it came from the pool and no frame cache shares it
+        WebPLoader.releaseFrame(frame);
+
+        WebPRendition[] renditions = new WebPRendition[sizes.length];
+        for (int i : order) {
+            int[] target = fit(info.width(), info.height(), sizes[i]);
+            while (level.width / 2 >= target[0] && level.height / 2 >= target[1]) {
+                level = halve(level);
+            }
+            Level rendition = level.width == target[0] && level.height == target[1] ? level : scale(level, target[0], target[1]);
+            Chunk[] chunks = options != null
+                    ? WebPFactory.encodeRGBA(rendition.rgba, rendition.width, rendition.height, rendition.width, options)
+                    : null;
+            renditions[i] = new WebPRendition(sizes[i], rendition.width, rendition.height, rendition.rgba, chunks);
+        }
+        return List.of(renditions);
+    }
+
+    // Longest edge limited to size, aspect ratio preserved
+    private static int[] fit(int width, int height, int size) {
+        if (width <= size && height <= size) return new int[]{width, height};
+        return IIOImageTools.computeDimensions(width, height, size, size, true);
+    }
+
+    private static byte[] toArray(IIOImageFrame frame) {
+        ByteBuffer pixels = ((ByteBuffer) frame.getImageData()).duplicate();
+        int rowBytes = frame.getWidth() * 4;
+        byte[] rgba = new byte[rowBytes * frame.getHeight()];
+        for (int y = 0; y < frame.getHeight(); y++) {
+            pixels.get(y * frame.getStride(), rgba, y * rowBytes, rowBytes);
+        }
+        return rgba;
+    }
+
+    // Color is weighted by alpha so that transparent pixels do not bleed into their neighbours
+    private static Level halve(Level level) {
+        int width = Math.max(1, level.width / 2);
+        int height = Math.max(1, level.height / 2);
+        byte[] src = level.rgba;
+        byte[] dst = new byte[width * height * 4];
+        int srcStride = level.width * 4;
+        for (int y = 0; y < height; y++) {
+            int row0 = Math.min(y * 2, level.height - 1) * srcStride;
+            int row1 = Math.min(y * 2 + 1, level.height - 1) * srcStride;
+            for (int x = 0; x < width; x++) {
+                int col0 = Math.min(x * 2, level.width - 1) * 4;
+                int col1 = Math.min(x * 2 + 1, level.width - 1) * 4;
+                int a0 = src[row0 + col0 + 3] & 0xFF;
+                int a1 = src[row0 + col1 + 3] & 0xFF;
+                int a2 = src[row1 + col0 + 3] & 0xFF;
+                int a3 = src[row1 + col1 + 3] & 0xFF;
+                int alpha = a0 + a1 + a2 + a3;
+                int d = (y * width + x) * 4;
+                for (int c = 0; c < 3; c++) {
+                    int sum = (src[row0 + col0 + c] & 0xFF) * a0 + (src[row0 + col1 + c] & 0xFF) * a1
+                            + (src[row1 + col0 + c] & 0xFF) * a2 + (src[row1 + col1 + c] & 0xFF) * a3;
+                    dst[d + c] = (byte) (alpha == 0 ? 0 : (sum + alpha / 2) / alpha);
+                }
+                dst[d + 3] = (byte) ((alpha + 2) >> 2);
+            }
+        }
+        return new Level(width, height, dst);
+    }
+
+    private static Level scale(Level level, int width, int height) {
+        IIOImageFrame frame = new IIOImageFrame(IIOImageType.RGBA, ByteBuffer.wrap(level.rgba), level.width, level.height,
+                level.width * 4, null, null);
+        IIOImageFrame scaled = IIOImageTools.scaleImageFrame(frame, width, height, true);
+        return new Level(width, height, toArray(scaled));
+    }
+
+    private record Level(int width, int height, byte[] rgba) {
+    }
+}
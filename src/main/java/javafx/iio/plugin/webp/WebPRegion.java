@@ -0,0 +1,35 @@
+package javafx.iio.plugin.webp;
+
+/**
+ * Rectangle in image pixel coordinates. libwebp aligns the left and top edges of lossy crops to even offsets.
+ */
+public record WebPRegion(int x, int y, int width, int height) {
+
+    public WebPRegion {
+        if (x < 0 || y < 0) throw new IllegalArgumentException("region origin must not be negative");
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("region size must be positive");
+    }
+
+    public boolean covers(int width, int height) {
+        return x == 0 && y == 0 && this.width >= width && this.height >= height;
+    }
+
+    public WebPRegion union(WebPRegion other) {
+        if (other == null) return this;
+        int left = Math.min(x, other.x);
+        int top = Math.min(y, other.y);
+        int right = Math.max(x + width, other.x + other.width);
+        int bottom = Math.max(y + height, other.y + other.height);
+        return new WebPRegion(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Clips region to the image bounds, returns {@code null} if the region lies outside of the image
+     */
+    public WebPRegion clip(int width, int height) {
+        int right = Math.min(x + this.width, width);
+        int bottom = Math.min(y + this.height, height);
+        if (right <= x || bottom <= y) return null;
+        return right - x == this.width && bottom - y == this.height ? this : new WebPRegion(x, y, right - x, bottom - y);
+    }
+}
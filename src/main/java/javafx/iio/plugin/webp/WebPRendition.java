@@ -0,0 +1,11 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.Chunk;
+
+/**
+ * One level of {@link WebPLoader#renditions(java.io.InputStream, WebPEncoderOptions, int...)}, {@code rgba} is
+ * non-premultiplied with a stride of {@code width * 4}. {@code chunks} hold the re-encoded image, {@code null}
+ * when no encoder options were given.
+ */
+public record WebPRendition(int size, int width, int height, byte[] rgba, Chunk[] chunks) {
+}
@@ -0,0 +1,47 @@
+package javafx.iio.plugin.webp;
+
+import jdk.jfr.*;
+
+@Name("javafx.iio.plugin.webp.Scale")
+@Label("WebP Rescale")
+@Category({"AetherJFX", "WebP"})
+@Description("Rescaling of a decoded frame with IIOImageTools")
+@StackTrace(false)
+final class WebPScaleEvent extends Event {
+
+    @Label("Frame Index")
+    int frameIndex;
+
+    @Label("Source Width")
+    int sourceWidth;
+
+    @Label("Source Height")
+    int sourceHeight;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Smooth")
+    boolean smooth;
+
+    static WebPScaleEvent start() {
+        WebPScaleEvent event = new WebPScaleEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(int frameIndex, int sourceWidth, int sourceHeight, int width, int height, boolean smooth) {
+        if (shouldCommit()) {
+            this.frameIndex = frameIndex;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.width = width;
+            this.height = height;
+            this.smooth = smooth;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package javafx.iio.plugin.webp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Random access view over WebP container bytes. Positions are relative to the first byte of the {@code RIFF} header.
+ */
+abstract class WebPSource implements Closeable {
+
+    // Smaller files are read with a single call, mappings are only released by the garbage collector
+    static final long MAP_THRESHOLD = 64 * 1024;
+
+    static WebPSource of(InputStream in) throws IOException {
+        Objects.requireNonNull(in);
+        if (in instanceof FileInputStream fileInputStream) {
+            FileChannel channel = fileInputStream.getChannel();
+            if (channel.size() - channel.position() <= Integer.MAX_VALUE) {
+                return new BufferSource(map(channel), in);
+            }
+            return new ChannelSource(channel, channel.position());
+        }
+        return new StreamSource(in);
+    }
+
+    /**
+     * Remaining file contents from the current channel position, memory-mapped read-only above {@link #MAP_THRESHOLD}
+     */
+    static ByteBuffer map(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long size = channel.size() - position;
+        if (size > Integer.MAX_VALUE) throw new IOException("file too large to map");
+        if (size >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        return buffer.flip();
+    }
+
+    abstract boolean isSeekable();
+
+    /**
+     * Reads up to {@code len} bytes at {@code position}, blocks only until some data is available.
+     * Returns the number of bytes read or {@code -1} at the end of data
+     */
+    abstract int read(long position, byte[] b, int off, int len) throws IOException;
+
+    void readFully(long position, byte[] b, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int count = read(position + n, b, off + n, len - n);
+            if (count < 0) throw new EOFException();
+            n += count;
+        }
+    }
+
+    final byte[] readFully(long position, int len) throws IOException {
+        byte[] buf = new byte[len];
+        readFully(position, buf, 0, len);
+        return buf;
+    }
+
+    /**
+     * Shares {@code len} bytes at {@code position} without copying, returns {@code null} if the source can not share its memory.
+     * The view is not sliced, bytes before its position remain accessible.
+     */
+    ByteBuffer view(long position, int len) throws IOException {
+        return null;
+    }
+
+    /**
+     * Seekable source over file contents held in memory, chunk payloads are slices of the buffer
+     */
+    static final class BufferSource extends WebPSource {
+
+        private final ByteBuffer buffer;
+        private final Closeable owner;
+
+        BufferSource(ByteBuffer buffer, Closeable owner) {
+            this.buffer = Objects.requireNonNull(buffer);
+            this.owner = owner;
+        }
+
+        @Override
+        boolean isSeekable() {
+            return true;
+        }
+
+        @Override
+        int read(long position, byte[] b, int off, int len) {
+            if (position >= buffer.limit()) return -1;
+            int n = (int) Math.min(len, buffer.limit() - position);
+            buffer.get((int) position, b, off, n);
+            return n;
+        }
+
+        @Override
+        ByteBuffer view(long position, int len) throws IOException {
+            if (position < 0 || position + len > buffer.limit()) throw new EOFException();
+            return buffer.duplicate().limit((int) position + len).position((int) position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owner != null) owner.close();
+        }
+    }
+
+    /**
+     * Seekable source backed by a {@link FileChannel}, reads never move the channel position
+     */
+    static final class ChannelSource extends WebPSource {
+
+        private final FileChannel channel;
+        private final long base;
+
+        ChannelSource(FileChannel channel, long base) {
+            this.channel = Objects.requireNonNull(channel);
+            this.base = base;
+        }
+
+        @Override
+        boolean isSeekable() {
+            return true;
+        }
+
+        @Override
+        int read(long position, byte[] b, int off, int len) throws IOException {
+            return channel.read(ByteBuffer.wrap(b, off, len), base + position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Non-seekable source, keeps everything read so far and never reads further than the requested position
+     */
+    static final class StreamSource extends WebPSource {
+
+        private final InputStream in;
+        private byte[] buffer = new byte[8192];
+        private int count;
+        private boolean eof;
+
+        StreamSource(InputStream in) {
+            this.in = Objects.requireNonNull(in);
+        }
+
+        @Override
+        boolean isSeekable() {
+            return false;
+        }
+
+        @Override
+        int read(long position, byte[] b, int off, int len) throws IOException {
+            if (position > Integer.MAX_VALUE - 1) throw new IOException("source too large to buffer");
+            fill((int) position + 1);
+            if (position >= count) return -1;
+            int n = Math.min(len, count - (int) position);
+            System.arraycopy(buffer, (int) position, b, off, n);
+            return n;
+        }
+
+        @Override
+        void readFully(long position, byte[] b, int off, int len) throws IOException {
+            if (position > Integer.MAX_VALUE - len) throw new IOException("source too large to buffer");
+            fill((int) position + len);
+            super.readFully(position, b, off, len);
+        }
+
+        // Filled bytes are never modified, views stay valid when the buffer is grown
+        @Override
+        ByteBuffer view(long position, int len) throws IOException {
+            if (position > Integer.MAX_VALUE - len) throw new IOException("source too large to buffer");
+            fill((int) position + len);
+            if (position + len > count) throw new EOFException();
+            return ByteBuffer.wrap(buffer).limit((int) position + len).position((int) position);
+        }
+
+        private void fill(int limit) throws IOException {
+            while (count < limit && !eof) {
+                if (limit > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(limit, buffer.length * 2));
+                }
+                int n = in.read(buffer, count, Math.min(buffer.length - count, Math.max(limit - count, 8192)));
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    count += n;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
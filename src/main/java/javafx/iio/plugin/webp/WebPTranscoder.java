@@ -0,0 +1,291 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.chunks.ALPHChunk;
+import javafx.iio.plugin.webp.chunks.Chunk;
+import javafx.iio.plugin.webp.chunks.VP8XChunk;
+import javafx.iio.plugin.webp.chunks.WebPChunk;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batch conversion of images to WebP files. Items pass read, decode, encode and write stages connected by bounded
+ * queues, so only a few items per stage are held in memory and a slow stage blocks the ones before it.
+ * Decode and encode run on {@code threads} workers each, read and write on one worker each. Workers are created by
+ * the thread factory, on Java 21 and later {@code Thread.ofVirtual().factory()} can be passed.
+ * Failed items are reported and skipped.
+ */
+public final class WebPTranscoder {
+
+    public enum Stage {
+        READ, DECODE, ENCODE, WRITE
+    }
+
+    public record Item(Path source, Path target, WebPEncoderOptions options) {
+        public Item {
+            Objects.requireNonNull(source);
+            Objects.requireNonNull(target);
+            Objects.requireNonNull(options);
+        }
+    }
+
+    /**
+     * Decoded image, pixels are packed ARGB as returned by {@code BufferedImage.getRGB}
+     */
+    public record Pixels(int width, int height, int[] argb) {
+    }
+
+    @FunctionalInterface
+    public interface Decoder {
+        Pixels decode(Item item, byte[] data) throws IOException;
+    }
+
+    public record Failure(Item item, Stage stage, Exception exception) {
+    }
+
+    public record StageReport(Stage stage, long items, long busyNanos, long elapsedNanos) {
+
+        public double getItemsPerSecond() {
+            return elapsedNanos > 0 ? items * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    public record Report(long completed, long bytesRead, long bytesWritten, long elapsedNanos,
+                         List<StageReport> stages, List<Failure> failures) {
+    }
+
+    private static final Job END = new Job(null);
+
+    private final ThreadFactory threadFactory;
+    private final int threads;
+    private final int queueCapacity;
+    private volatile Decoder decoder = WebPTranscoder::decodeImageIO;
+
+    public WebPTranscoder() {
+        this(Executors.defaultThreadFactory(), Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public WebPTranscoder(ThreadFactory threadFactory, int threads, int queueCapacity) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("queueCapacity must be positive");
+        this.threadFactory = Objects.requireNonNull(threadFactory);
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Decoder of source images, defaults to {@code javax.imageio} which reads PNG, JPEG, GIF and BMP
+     */
+    public void setDecoder(Decoder decoder) {
+        this.decoder = Objects.requireNonNull(decoder);
+    }
+
+    public Decoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Converts all items and waits for completion. {@code items} is iterated lazily by the read stage.
+     */
+    public Report transcode(Iterable<Item> items) throws InterruptedException {
+        Objects.requireNonNull(items);
+        Batch batch = new Batch(decoder);
+        BlockingQueue<Job> decodeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> encodeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        List<StageRunner> runners = List.of(
+                new StageRunner(batch, Stage.READ, 1, null, decodeQueue, threads),
+                new StageRunner(batch, Stage.DECODE, threads, decodeQueue, encodeQueue, threads),
+                new StageRunner(batch, Stage.ENCODE, threads, encodeQueue, writeQueue, 1),
+                new StageRunner(batch, Stage.WRITE, 1, writeQueue, null, 0)
+        );
+        batch.items = items.iterator();
+        List<Thread> workers = new ArrayList<>();
+        for (StageRunner runner : runners) {
+            for (int i = 0; i < runner.workers; i++) {
+                Thread thread = threadFactory.newThread(runner);
+                workers.add(thread);
+                thread.start();
+            }
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw e;
+        }
+        List<StageReport> stages = new ArrayList<>();
+        for (StageRunner runner : runners) {
+            stages.add(new StageReport(runner.stage, runner.items.sum(), runner.busyNanos.sum(), runner.endNanos - batch.start));
+        }
+        return new Report(runners.get(3).items.sum(), batch.bytesRead.sum(), batch.bytesWritten.sum(), System.nanoTime() - batch.start,
+                Collections.unmodifiableList(stages), List.copyOf(batch.failures));
+    }
+
+    private static final class Batch {
+        final Decoder decoder;
+        final long start = System.nanoTime();
+        final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder bytesWritten = new LongAdder();
+        Iterator<Item> items;
+
+        Batch(Decoder decoder) {
+            this.decoder = decoder;
+        }
+    }
+
+    private static final class Job {
+        final Item item;
+        byte[] data;
+        Pixels pixels;
+        Chunk[] chunks;
+        int width;
+        int height;
+
+        Job(Item item) {
+            this.item = item;
+        }
+    }
+
+    private static final class StageRunner implements Runnable {
+        final Batch batch;
+        final Stage stage;
+        final int workers;
+        final BlockingQueue<Job> in;
+        final BlockingQueue<Job> out;
+        final int consumers;
+        final AtomicInteger running;
+        final LongAdder items = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        volatile long endNanos;
+
+        StageRunner(Batch batch, Stage stage, int workers, BlockingQueue<Job> in, BlockingQueue<Job> out, int consumers) {
+            this.batch = batch;
+            this.stage = stage;
+            this.workers = workers;
+            this.in = in;
+            this.out = out;
+            this.consumers = consumers;
+            this.running = new AtomicInteger(workers);
+        }
+
+        @Override
+        public void run() {
+            boolean interrupted = false;
+            try {
+                Job job;
+                while ((job = next()) != END) {
+                    long start = System.nanoTime();
+                    boolean processed = process(job);
+                    busyNanos.add(System.nanoTime() - start);
+                    if (processed) {
+                        items.increment();
+                        if (out != null) out.put(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } finally {
+                // Last worker of a stage tells every worker of the next stage to finish
+                if (running.decrementAndGet() == 0) {
+                    endNanos = System.nanoTime();
+                    if (out != null && !interrupted) {
+                        try {
+                            for (int i = 0; i < consumers; i++) {
+                                out.put(END);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        }
+
+        private Job next() throws InterruptedException {
+            if (in != null) return in.take();
+            synchronized (batch) {
+                try {
+                    return batch.items.hasNext() ? new Job(batch.items.next()) : END;
+                } catch (RuntimeException e) {
+                    batch.failures.add(new Failure(null, stage, e));
+                    return END;
+                }
+            }
+        }
+
+        private boolean process(Job job) {
+            try {
+                switch (stage) {
+                    case READ -> {
+                        job.data = Files.readAllBytes(job.item.source());
+                        batch.bytesRead.add(job.data.length);
+                    }
+                    case DECODE -> {
+                        job.pixels = Objects.requireNonNull(batch.decoder.decode(job.item, job.data), "decoder returned null");
+                        job.data = null;
+                    }
+                    case ENCODE -> {
+                        Pixels pixels = job.pixels;
+                        job.chunks = WebPFactory.encodeBGRA(pixels.argb(), pixels.width(), pixels.height(), pixels.width(), job.item.options());
+                        job.width = pixels.width();
+                        job.height = pixels.height();
+                        job.pixels = null;
+                    }
+                    case WRITE -> batch.bytesWritten.add(write(job));
+                }
+                return true;
+            } catch (Exception e) {
+                batch.failures.add(new Failure(job.item, stage, e));
+                return false;
+            }
+        }
+
+        private static long write(Job job) throws IOException {
+            Chunk[] chunks = job.chunks;
+            // Lossy images with alpha need the extended format header
+            if (chunks[0] instanceof ALPHChunk) {
+                Chunk[] extended = new Chunk[chunks.length + 1];
+                extended[0] = new VP8XChunk(VP8XChunk.FLAG_ALPH, job.width, job.height);
+                System.arraycopy(chunks, 0, extended, 1, chunks.length);
+                chunks = extended;
+            }
+            WebPChunk riff = new WebPChunk(chunks);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.item.target()))) {
+                riff.write(out);
+            }
+            return riff.getFullSize();
+        }
+    }
+
+    private static Pixels decodeImageIO(Item item, byte[] data) throws IOException {
+        BufferedImage image = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(data)));
+        if (image == null) throw new IOException("Unsupported image format: " + item.source());
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return new Pixels(width, height, image.getRGB(0, 0, width, height, null, 0, width));
+    }
+}
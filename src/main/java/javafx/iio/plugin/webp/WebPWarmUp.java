@@ -0,0 +1,60 @@
+package javafx.iio.plugin.webp;
+
+import javafx.iio.plugin.webp.jna.WebP;
+
+import java.io.ByteArrayInputStream;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads libwebp and decodes tiny embedded images off the caller's thread, so that library extraction, linking and
+ * class initialization are done before the first real image is shown
+ */
+final class WebPWarmUp {
+
+    // 2x2 images encoded by libwebp
+    private static final byte[] LOSSY = {
+            82, 73, 70, 70, 54, 0, 0, 0, 87, 69, 66, 80, 86, 80, 56, 32, 42, 0, 0, 0, -48, 1, 0, -99, 1, 42, 2, 0, 2, 0,
+            2, -64, 76, 37, -108, 2, 116, 1, 15, 11, 70, 41, 0, 0, -2, -6, -123, 57, 9, -119, 36, -111, -4, -21, -124,
+            67, -103, -7, 84, 0, 0, 0
+    };
+    private static final byte[] LOSSLESS = {
+            82, 73, 70, 70, 60, 0, 0, 0, 87, 69, 66, 80, 86, 80, 56, 76, 48, 0, 0, 0, 47, 1, 64, 0, 0, 31, 64, 32, 64,
+            25, 43, 6, -72, 70, 65, -38, 6, -52, -66, 127, 69, -45, -90, -96, 109, 27, 54, -44, 67, -31, 108, -13, 31,
+            -95, -41, -74, -67, 63, 64, 54, 64, -103, 42, 108, 34, -6, 31, 31
+    };
+
+    private WebPWarmUp() {
+    }
+
+    static CompletableFuture<Void> start() {
+        return start(task -> {
+            Thread thread = new Thread(task, "WebP warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    static CompletableFuture<Void> start(Executor executor) {
+        Objects.requireNonNull(executor);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                run();
+            } catch (Exception e) {
+                throw new IllegalStateException("WebP warm-up failed", e);
+            }
+        }, executor);
+    }
+
+    private static void run() throws Exception {
+        Objects.requireNonNull(WebP.INSTANCE);
+        // Optional, a missing libwebpdemux is not an error
+        WebPAnimDecoder.isAvailable();
+        for (byte[] image : new byte[][]{LOSSY, LOSSLESS}) {
+            try (WebPLoader loader = new WebPLoader(new ByteArrayInputStream(image))) {
+                WebPLoader.releaseFrame(loader.decode(0, 0, 0, true, true));
+            }
+        }
+    }
+}
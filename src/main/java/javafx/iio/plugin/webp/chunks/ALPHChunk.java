@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class ALPHChunk extends RawDataChunk {
 
     public static final byte[] ALPH = new byte[]{'A', 'L', 'P', 'H'};
@@ -24,6 +26,11 @@ public class ALPHChunk extends RawDataChunk {
         rsvPFC = data[0];
     }
 
+    public ALPHChunk(ByteBuffer data) {
+        super(ALPH, data);
+        rsvPFC = data.get(data.position());
+    }
+
     public int getFlags() {
         return rsvPFC;
     }
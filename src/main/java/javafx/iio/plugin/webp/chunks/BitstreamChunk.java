@@ -1,9 +1,15 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class BitstreamChunk extends RawDataChunk {
 
     public BitstreamChunk(byte[] fourCC, byte[] data) {
         super(fourCC, data);
     }
 
+    public BitstreamChunk(byte[] fourCC, ByteBuffer data) {
+        super(fourCC, data);
+    }
+
 }
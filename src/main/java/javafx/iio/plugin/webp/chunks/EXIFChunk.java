@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class EXIFChunk extends RawDataChunk {
 
     public static final byte[] EXIF = new byte[]{'E', 'X', 'I', 'F'};
@@ -8,4 +10,8 @@ public class EXIFChunk extends RawDataChunk {
         super(EXIF, data);
     }
 
+    public EXIFChunk(ByteBuffer data) {
+        super(EXIF, data);
+    }
+
 }
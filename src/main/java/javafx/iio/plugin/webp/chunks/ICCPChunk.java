@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class ICCPChunk extends RawDataChunk {
 
     public static final byte[] ICCP = new byte[]{'I', 'C', 'C', 'P'};
@@ -8,4 +10,8 @@ public class ICCPChunk extends RawDataChunk {
         super(ICCP, data);
     }
 
+    public ICCPChunk(ByteBuffer data) {
+        super(ICCP, data);
+    }
+
 }
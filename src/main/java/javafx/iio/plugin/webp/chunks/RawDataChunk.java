@@ -2,19 +2,67 @@ package javafx.iio.plugin.webp.chunks;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public class RawDataChunk extends Chunk {
 
     private final byte[] rawData;
+    private final ByteBuffer data;
+    private final ByteBuffer container;
+    private final int chunkOffset;
 
     public RawDataChunk(byte[] fourCC, byte[] data) {
         super(fourCC, data.length);
         this.rawData = Objects.requireNonNull(data);
+        this.data = null;
+        this.container = null;
+        this.chunkOffset = -1;
+    }
+
+    /**
+     * Chunk backed by the remaining bytes of {@code data}, usually a slice of a memory-mapped file. The bytes are not copied.
+     * When the 8 bytes before the buffer position hold the header of this chunk, the enclosing buffer is kept so that
+     * adjacent chunks can be handed to libwebp together, see {@link #getChunkData()}.
+     */
+    public RawDataChunk(byte[] fourCC, ByteBuffer data) {
+        super(fourCC, data.remaining());
+        this.rawData = null;
+        this.data = data.slice();
+        if (hasHeader(fourCC, data)) {
+            this.container = data.duplicate().clear();
+            this.chunkOffset = data.position() - 8;
+        } else {
+            this.container = null;
+            this.chunkOffset = -1;
+        }
+    }
+
+    private static boolean hasHeader(byte[] fourCC, ByteBuffer data) {
+        int offset = data.position() - 8;
+        if (offset < 0) return false;
+        for (int i = 0; i < 4; i++) {
+            if (data.get(offset + i) != fourCC[i]) return false;
+        }
+        int size = data.remaining();
+        for (int i = 0; i < 4; i++) {
+            if (data.get(offset + 4 + i) != (byte) (size >>> (i * 8))) return false;
+        }
+        return true;
     }
 
     protected void writeRawData(OutputStream out) throws IOException {
-        out.write(rawData);
+        if (rawData != null) {
+            out.write(rawData);
+            return;
+        }
+        ByteBuffer src = data.duplicate();
+        byte[] buf = new byte[Math.min(src.remaining(), 8192)];
+        while (src.hasRemaining()) {
+            int count = Math.min(buf.length, src.remaining());
+            src.get(buf, 0, count);
+            out.write(buf, 0, count);
+        }
     }
 
     @Override
@@ -22,8 +70,34 @@ public class RawDataChunk extends Chunk {
         writeRawData(out);
     }
 
+    /**
+     * Payload as an array, buffer-backed chunks are copied on every call
+     */
     public byte[] getRawData() {
-        return rawData;
+        if (rawData != null) return rawData;
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * View of the payload without copying, it must not be modified. Heap views stay writable so they can be passed to native code
+     */
+    public ByteBuffer getData() {
+        return rawData != null ? ByteBuffer.wrap(rawData) : data.duplicate();
+    }
+
+    /**
+     * View of the enclosing buffer positioned at the chunk header and limited to the payload end,
+     * {@code null} if the chunk was not created from container bytes
+     */
+    public ByteBuffer getChunkData() {
+        if (container == null) return null;
+        return container.duplicate().limit(chunkOffset + 8 + data.remaining()).position(chunkOffset);
+    }
+
+    public boolean isDirect() {
+        return data != null && data.isDirect();
     }
 
 }
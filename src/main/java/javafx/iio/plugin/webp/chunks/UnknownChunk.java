@@ -1,9 +1,15 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class UnknownChunk extends RawDataChunk {
 
     public UnknownChunk(byte[] fourCC, byte[] data) {
         super(fourCC, data);
     }
 
+    public UnknownChunk(byte[] fourCC, ByteBuffer data) {
+        super(fourCC, data);
+    }
+
 }
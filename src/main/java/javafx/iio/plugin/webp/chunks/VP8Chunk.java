@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class VP8Chunk extends BitstreamChunk {
 
     public static final byte[] VP8 = new byte[]{'V', 'P', '8', ' '};
@@ -8,4 +10,8 @@ public class VP8Chunk extends BitstreamChunk {
         super(VP8, data);
     }
 
+    public VP8Chunk(ByteBuffer data) {
+        super(VP8, data);
+    }
+
 }
@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class VP8LChunk extends BitstreamChunk {
 
     public static final byte[] VP8L = new byte[]{'V', 'P', '8', 'L'};
@@ -8,4 +10,8 @@ public class VP8LChunk extends BitstreamChunk {
         super(VP8L, data);
     }
 
+    public VP8LChunk(ByteBuffer data) {
+        super(VP8L, data);
+    }
+
 }
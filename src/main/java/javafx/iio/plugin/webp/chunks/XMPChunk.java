@@ -1,5 +1,7 @@
 package javafx.iio.plugin.webp.chunks;
 
+import java.nio.ByteBuffer;
+
 public class XMPChunk extends RawDataChunk {
 
     public static final byte[] XMP = new byte[]{'X', 'M', 'P', ' '};
@@ -8,4 +10,8 @@ public class XMPChunk extends RawDataChunk {
         super(XMP, data);
     }
 
+    public XMPChunk(ByteBuffer data) {
+        super(XMP, data);
+    }
+
 }
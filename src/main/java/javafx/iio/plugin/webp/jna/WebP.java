@@ -2,19 +2,48 @@ package javafx.iio.plugin.webp.jna;
 
 import com.sun.jna.Library;
 import com.sun.jna.Native;
-import com.sun.jna.NativeLibrary;
+import com.sun.jna.Platform;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 
 public interface WebP extends Library {
     WebP INSTANCE = WebPLibrary.create();
 
+    int WEBP_DECODER_ABI_VERSION = 0x0209;
+    int WEBP_ENCODER_ABI_VERSION = 0x020f;
+
+    // WebPPreset
+    int WEBP_PRESET_DEFAULT = 0;
+    int WEBP_PRESET_PICTURE = 1;
+    int WEBP_PRESET_PHOTO = 2;
+    int WEBP_PRESET_DRAWING = 3;
+    int WEBP_PRESET_ICON = 4;
+    int WEBP_PRESET_TEXT = 5;
+
+    // WEBP_CSP_MODE
+    int MODE_RGB = 0;
+    int MODE_RGBA = 1;
+    int MODE_BGR = 2;
+    int MODE_BGRA = 3;
+    int MODE_ARGB = 4;
+    int MODE_rgbA = 7;
+    int MODE_bgrA = 8;
+    int MODE_Argb = 9;
+
+    // VP8StatusCode
+    int VP8_STATUS_OK = 0;
+    int VP8_STATUS_OUT_OF_MEMORY = 1;
+    int VP8_STATUS_INVALID_PARAM = 2;
+    int VP8_STATUS_BITSTREAM_ERROR = 3;
+    int VP8_STATUS_UNSUPPORTED_FEATURE = 4;
+    int VP8_STATUS_SUSPENDED = 5;
+    int VP8_STATUS_USER_ABORT = 6;
+    int VP8_STATUS_NOT_ENOUGH_DATA = 7;
+
     void WebPFree(Pointer ptr);
 
     long WebPEncodeRGB(byte[] rgb, int width, int height, int stride,
@@ -44,51 +73,124 @@ public interface WebP extends Library {
     Pointer WebPDecodeRGBA(byte[] data, long data_size,
                            IntByReference width, IntByReference height);
 
+    Pointer WebPDecodeRGBA(Buffer data, long data_size,
+                           IntByReference width, IntByReference height);
+
     Pointer WebPDecodeARGB(byte[] data, long data_size,
                            IntByReference width, IntByReference height);
 
+    Pointer WebPDecodeARGB(Buffer data, long data_size,
+                           IntByReference width, IntByReference height);
+
     Pointer WebPDecodeBGRA(byte[] data, long data_size,
                            IntByReference width, IntByReference height);
 
+    Pointer WebPDecodeBGRA(Buffer data, long data_size,
+                           IntByReference width, IntByReference height);
+
     Pointer WebPDecodeRGB(byte[] data, long data_size,
                           IntByReference width, IntByReference height);
 
+    Pointer WebPDecodeRGB(Buffer data, long data_size,
+                          IntByReference width, IntByReference height);
+
     Pointer WebPDecodeBGR(byte[] data, long data_size,
                           IntByReference width, IntByReference height);
-}
 
-class WebPLibrary {
+    Pointer WebPDecodeBGR(Buffer data, long data_size,
+                          IntByReference width, IntByReference height);
 
-    static WebP create() {
-        try {
-            loadJarDll("/win32-x86-64/libsharpyuv.dll");
-            loadJarDll("/win32-x86-64/libwebpdecoder.dll");
-        } catch (Exception ignored) {
-            System.loadLibrary("libsharpyuv");
-            System.loadLibrary("libwebpdecoder");
-        }
-
-        NativeLibrary JNA_NATIVE_LIB = NativeLibrary.getInstance("libwebp");
-        return Native.load("libwebp", WebP.class);
-    }
+    int WebPGetInfo(byte[] data, long data_size,
+                    IntByReference width, IntByReference height);
+
+    int WebPGetInfo(Buffer data, long data_size,
+                    IntByReference width, IntByReference height);
+
+    Pointer WebPDecodeRGBAInto(byte[] data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeRGBAInto(Buffer data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeARGBInto(byte[] data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeARGBInto(Buffer data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeBGRAInto(byte[] data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeBGRAInto(Buffer data, long data_size,
+                               ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeRGBInto(byte[] data, long data_size,
+                              ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeRGBInto(Buffer data, long data_size,
+                              ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeBGRInto(byte[] data, long data_size,
+                              ByteBuffer output_buffer, long output_buffer_size, int output_stride);
+
+    Pointer WebPDecodeBGRInto(Buffer data, long data_size,
+                              ByteBuffer output_buffer, long output_buffer_size, int output_stride);
 
-    static void loadJarDll(String name) throws IOException {
-        InputStream in = WebPLibrary.class.getResourceAsStream(name);
-        byte[] buffer = new byte[1024];
-        int read = -1;
+    int WebPInitDecoderConfigInternal(WebPDecoderConfig config, int version);
 
-        File temp = new File(new File(System.getProperty("java.io.tmpdir"), "AetherJFXWebP"), name);
-        if (!temp.exists()) {
-            temp.getParentFile().mkdirs();
-            FileOutputStream fos = new FileOutputStream(temp);
+    int WebPConfigInitInternal(WebPConfig config, int preset, float quality, int version);
 
-            while ((read = in.read(buffer)) != -1) {
-                fos.write(buffer, 0, read);
-            }
-            fos.close();
-        }
-        in.close();
+    int WebPConfigLosslessPreset(WebPConfig config, int level);
 
-        System.load(temp.getAbsolutePath());
+    int WebPValidateConfig(WebPConfig config);
+
+    int WebPPictureInitInternal(WebPPicture picture, int version);
+
+    int WebPPictureImportRGB(WebPPicture picture, byte[] rgb, int rgb_stride);
+
+    int WebPPictureImportBGR(WebPPicture picture, byte[] bgr, int bgr_stride);
+
+    int WebPPictureImportRGBA(WebPPicture picture, byte[] rgba, int rgba_stride);
+
+    int WebPPictureImportBGRA(WebPPicture picture, int[] bgra, int bgra_stride);
+
+    void WebPPictureFree(WebPPicture picture);
+
+    void WebPMemoryWriterInit(WebPMemoryWriter writer);
+
+    void WebPMemoryWriterClear(WebPMemoryWriter writer);
+
+    int WebPEncode(WebPConfig config, WebPPicture picture);
+
+    int WebPGetFeaturesInternal(byte[] data, long data_size,
+                                WebPBitstreamFeatures features, int version);
+
+    int WebPGetFeaturesInternal(Buffer data, long data_size,
+                                WebPBitstreamFeatures features, int version);
+
+    int WebPDecode(byte[] data, long data_size, WebPDecoderConfig config);
+
+    int WebPDecode(Buffer data, long data_size, WebPDecoderConfig config);
+
+    void WebPFreeDecBuffer(WebPDecBuffer buffer);
+
+    Pointer WebPIDecode(byte[] data, long data_size, WebPDecoderConfig config);
+
+    int WebPIAppend(Pointer idec, byte[] data, long data_size);
+
+    Pointer WebPIDecGetRGB(Pointer idec, IntByReference last_y,
+                           IntByReference width, IntByReference height, IntByReference stride);
+
+    void WebPIDelete(Pointer idec);
+}
+
+class WebPLibrary {
+
+    static WebP create() {
+        // Bundled dependencies are loaded first, so that libwebp resolves them from the cache directory
+        String sharpyuv = WebPNatives.path("sharpyuv");
+        if (sharpyuv != null) System.load(sharpyuv);
+        String webp = WebPNatives.path("webp");
+        return Native.load(webp != null ? webp : Platform.isWindows() ? "libwebp" : "webp", WebP.class);
     }
-}
\ No newline at end of file
+}
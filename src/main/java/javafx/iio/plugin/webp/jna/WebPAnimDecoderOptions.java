@@ -0,0 +1,10 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"color_mode", "use_threads", "padding"})
+public class WebPAnimDecoderOptions extends Structure {
+    public int color_mode;
+    public int use_threads;
+    public int[] padding = new int[7];
+}
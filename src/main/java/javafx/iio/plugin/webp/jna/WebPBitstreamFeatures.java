@@ -0,0 +1,13 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"width", "height", "has_alpha", "has_animation", "format", "pad"})
+public class WebPBitstreamFeatures extends Structure {
+    public int width;
+    public int height;
+    public int has_alpha;
+    public int has_animation;
+    public int format;
+    public int[] pad = new int[5];
+}
@@ -0,0 +1,39 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"lossless", "quality", "method", "image_hint", "target_size", "target_PSNR", "segments", "sns_strength",
+        "filter_strength", "filter_sharpness", "filter_type", "autofilter", "alpha_compression", "alpha_filtering", "alpha_quality",
+        "pass", "show_compressed", "preprocessing", "partitions", "partition_limit", "emulate_jpeg_size", "thread_level",
+        "low_memory", "near_lossless", "exact", "use_delta_palette", "use_sharp_yuv", "qmin", "qmax"})
+public class WebPConfig extends Structure {
+    public int lossless;
+    public float quality;
+    public int method;
+    public int image_hint;
+    public int target_size;
+    public float target_PSNR;
+    public int segments;
+    public int sns_strength;
+    public int filter_strength;
+    public int filter_sharpness;
+    public int filter_type;
+    public int autofilter;
+    public int alpha_compression;
+    public int alpha_filtering;
+    public int alpha_quality;
+    public int pass;
+    public int show_compressed;
+    public int preprocessing;
+    public int partitions;
+    public int partition_limit;
+    public int emulate_jpeg_size;
+    public int thread_level;
+    public int low_memory;
+    public int near_lossless;
+    public int exact;
+    public int use_delta_palette;
+    public int use_sharp_yuv;
+    public int qmin;
+    public int qmax;
+}
@@ -0,0 +1,10 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"bytes", "size"})
+public class WebPData extends Structure {
+    public Pointer bytes;
+    public long size;
+}
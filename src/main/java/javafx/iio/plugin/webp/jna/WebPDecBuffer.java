@@ -0,0 +1,39 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.Union;
+
+@Structure.FieldOrder({"colorspace", "width", "height", "is_external_memory", "u", "pad", "private_memory"})
+public class WebPDecBuffer extends Structure {
+    public int colorspace;
+    public int width;
+    public int height;
+    public int is_external_memory;
+    public Buffers u;
+    public int[] pad = new int[4];
+    public Pointer private_memory;
+
+    public static class Buffers extends Union {
+        public WebPRGBABuffer RGBA;
+        public WebPYUVABuffer YUVA;
+    }
+
+    @Structure.FieldOrder({"rgba", "stride", "size"})
+    public static class WebPRGBABuffer extends Structure {
+        public Pointer rgba;
+        public int stride;
+        public long size;
+    }
+
+    @Structure.FieldOrder({"y", "u", "v", "a", "y_stride", "u_stride", "v_stride", "a_stride", "y_size", "u_size", "v_size", "a_size"})
+    public static class WebPYUVABuffer extends Structure {
+        public Pointer y, u, v, a;
+        public int y_stride;
+        public int u_stride, v_stride;
+        public int a_stride;
+        public long y_size;
+        public long u_size, v_size;
+        public long a_size;
+    }
+}
@@ -0,0 +1,10 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"input", "output", "options"})
+public class WebPDecoderConfig extends Structure {
+    public WebPBitstreamFeatures input;
+    public WebPDecBuffer output;
+    public WebPDecoderOptions options;
+}
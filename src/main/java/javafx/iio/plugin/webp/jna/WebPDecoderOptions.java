@@ -0,0 +1,20 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"bypass_filtering", "no_fancy_upsampling", "use_cropping", "crop_left", "crop_top", "crop_width", "crop_height",
+        "use_scaling", "scaled_width", "scaled_height", "use_threads", "dithering_strength", "flip", "alpha_dithering_strength", "pad"})
+public class WebPDecoderOptions extends Structure {
+    public int bypass_filtering;
+    public int no_fancy_upsampling;
+    public int use_cropping;
+    public int crop_left, crop_top;
+    public int crop_width, crop_height;
+    public int use_scaling;
+    public int scaled_width, scaled_height;
+    public int use_threads;
+    public int dithering_strength;
+    public int flip;
+    public int alpha_dithering_strength;
+    public int[] pad = new int[5];
+}
@@ -0,0 +1,50 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Optional libwebpdemux binding, {@link #getInstance()} returns {@code null} when the library is not available
+ */
+public interface WebPDemux extends Library {
+
+    int WEBP_DEMUX_ABI_VERSION = 0x0107;
+
+    static WebPDemux getInstance() {
+        return WebPDemuxLibrary.INSTANCE;
+    }
+
+    int WebPAnimDecoderOptionsInitInternal(WebPAnimDecoderOptions dec_options, int abi_version);
+
+    Pointer WebPAnimDecoderNewInternal(WebPData webp_data, WebPAnimDecoderOptions dec_options, int abi_version);
+
+    int WebPAnimDecoderGetInfo(Pointer dec, WebPAnimInfo info);
+
+    int WebPAnimDecoderHasMoreFrames(Pointer dec);
+
+    int WebPAnimDecoderGetNext(Pointer dec, PointerByReference buf, IntByReference timestamp);
+
+    void WebPAnimDecoderReset(Pointer dec);
+
+    void WebPAnimDecoderDelete(Pointer dec);
+}
+
+class WebPDemuxLibrary {
+
+    static final WebPDemux INSTANCE = create();
+
+    static WebPDemux create() {
+        // libwebpdemux links against libwebp, make sure it is loaded first
+        WebP webP = WebP.INSTANCE;
+        try {
+            String demux = WebPNatives.path("webpdemux");
+            return Native.load(demux != null ? demux : Platform.isWindows() ? "libwebpdemux" : "webpdemux", WebPDemux.class);
+        } catch (UnsatisfiedLinkError ignored) {
+            return null;
+        }
+    }
+}
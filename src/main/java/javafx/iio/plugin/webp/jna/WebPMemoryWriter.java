@@ -0,0 +1,12 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"mem", "size", "max_size", "pad"})
+public class WebPMemoryWriter extends Structure {
+    public Pointer mem;
+    public long size;
+    public long max_size;
+    public int[] pad = new int[1];
+}
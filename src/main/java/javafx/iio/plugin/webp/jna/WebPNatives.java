@@ -0,0 +1,119 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Platform;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Native libraries bundled under {@code /<jna platform prefix>/} next to the {@code webp.sha256} index generated by the
+ * build. They are extracted once into {@code <java.io.tmpdir>/AetherJFXWebP/<platform>-<index hash>}, reused by later
+ * runs after their checksum is verified and replaced if it does not match. Platforms without an index use the
+ * libraries installed on the system.
+ */
+final class WebPNatives {
+
+    static final String INDEX = "webp.sha256";
+
+    private static final Map<String, Path> LIBRARIES = extract();
+
+    private WebPNatives() {
+    }
+
+    /**
+     * Absolute path of a bundled library like {@code webp} or {@code sharpyuv}, {@code null} if it is not bundled
+     */
+    static String path(String name) {
+        Path path = LIBRARIES.get(name);
+        return path != null ? path.toString() : null;
+    }
+
+    private static Map<String, Path> extract() {
+        String prefix = "/" + Platform.RESOURCE_PREFIX + "/";
+        InputStream index = WebPNatives.class.getResourceAsStream(prefix + INDEX);
+        if (index == null) return Map.of();
+        try (index) {
+            byte[] indexBytes = index.readAllBytes();
+            String version = HexFormat.of().formatHex(sha256().digest(indexBytes), 0, 8);
+            Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "AetherJFXWebP", Platform.RESOURCE_PREFIX + "-" + version);
+            Files.createDirectories(dir);
+            Map<String, Path> libraries = new HashMap<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(indexBytes), StandardCharsets.UTF_8));
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isBlank()) continue;
+                // sha256sum format: checksum, two spaces, file name
+                String[] entry = line.trim().split("\\s+\\*?", 2);
+                Path library = dir.resolve(entry[1]);
+                if (!Files.isRegularFile(library) || !entry[0].equalsIgnoreCase(checksum(library))) {
+                    extract(prefix + entry[1], library, entry[0]);
+                }
+                libraries.put(name(entry[1]), library);
+            }
+            return libraries;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to extract bundled libwebp", e);
+        }
+    }
+
+    // Written to a temporary file first, so that concurrently starting processes never load a partial library
+    private static void extract(String resource, Path library, String checksum) throws IOException {
+        Path temp = Files.createTempFile(library.getParent(), library.getFileName().toString(), ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = WebPNatives.class.getResourceAsStream(resource)) {
+                if (in == null) throw new IOException("Missing bundled library " + resource);
+                Files.copy(new DigestInputStream(in, digest), temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (!checksum.equalsIgnoreCase(HexFormat.of().formatHex(digest.digest()))) {
+                throw new IOException("Checksum mismatch of bundled library " + resource);
+            }
+            try {
+                Files.move(temp, library, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, library, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String checksum(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // libwebp.so, libwebp.dll and webp.dll are all "webp"
+    private static String name(String fileName) {
+        String name = fileName.startsWith("lib") ? fileName.substring(3) : fileName;
+        int extension = name.indexOf('.');
+        return extension >= 0 ? name.substring(0, extension) : name;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package javafx.iio.plugin.webp.jna;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+@Structure.FieldOrder({"use_argb", "colorspace", "width", "height", "y", "u", "v", "y_stride", "uv_stride", "a", "a_stride", "pad1",
+        "argb", "argb_stride", "pad2", "writer", "custom_ptr", "extra_info_type", "extra_info", "stats", "error_code",
+        "progress_hook", "user_data", "pad3", "pad4", "pad5", "pad6", "memory_", "memory_argb_", "pad7"})
+public class WebPPicture extends Structure {
+    public int use_argb;
+    public int colorspace;
+    public int width, height;
+    public Pointer y, u, v;
+    public int y_stride, uv_stride;
+    public Pointer a;
+    public int a_stride;
+    public int[] pad1 = new int[2];
+    public Pointer argb;
+    public int argb_stride;
+    public int[] pad2 = new int[3];
+    public Pointer writer;
+    public Pointer custom_ptr;
+    public int extra_info_type;
+    public Pointer extra_info;
+    public Pointer stats;
+    public int error_code;
+    public Pointer progress_hook;
+    public Pointer user_data;
+    public int[] pad3 = new int[3];
+    public Pointer pad4, pad5;
+    public int[] pad6 = new int[8];
+    public Pointer memory_;
+    public Pointer memory_argb_;
+    public Pointer[] pad7 = new Pointer[2];
+}
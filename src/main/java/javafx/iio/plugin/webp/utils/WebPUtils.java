@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 public final class WebPUtils {
@@ -65,15 +66,15 @@ public final class WebPUtils {
         return arg;
     }
 
+    private static final byte[] ZEROS = new byte[8];
+
     public static void writePadding(OutputStream out, int payload) throws IOException {
-        for (int i = 0; i < payload; i++) {
-            out.write(0);
-        }
+        writePadding(out, (long) payload);
     }
 
     public static void writePadding(OutputStream out, long payload) throws IOException {
-        for (long i = 0; i < payload; i++) {
-            out.write(0);
+        for (long remaining = payload; remaining > 0; remaining -= ZEROS.length) {
+            out.write(ZEROS, 0, (int) Math.min(remaining, ZEROS.length));
         }
     }
 
@@ -160,6 +161,28 @@ public final class WebPUtils {
                 ((buf[0] & 0xFF) << 0));
     }
 
+    public static int toInt32(byte[] buf, int off) {
+        return (((buf[off + 3] & 0xFF) << 24) |
+                ((buf[off + 2] & 0xFF) << 16) |
+                ((buf[off + 1] & 0xFF) << 8) |
+                ((buf[off] & 0xFF) << 0));
+    }
+
+    public static long toUInt32(byte[] buf, int off) {
+        return toUInt32(toInt32(buf, off));
+    }
+
+    public static int toUInt24(byte[] buf, int off) {
+        return (((buf[off + 2] & 0xFF) << 16) |
+                ((buf[off + 1] & 0xFF) << 8) |
+                ((buf[off] & 0xFF) << 0));
+    }
+
+    public static int toUInt16(byte[] buf, int off) {
+        return (((buf[off + 1] & 0xFF) << 8) |
+                ((buf[off] & 0xFF) << 0));
+    }
+
     public static long toUInt32(int val) {
         return ((long) val) & 0xFFFFFFFFL;
     }
@@ -210,10 +233,7 @@ public final class WebPUtils {
     }
 
     public static void writeFourCC(OutputStream out, byte c1, byte c2, byte c3, byte c4) throws IOException {
-        out.write(c1);
-        out.write(c2);
-        out.write(c3);
-        out.write(c4);
+        out.write(new byte[]{c1, c2, c3, c4}, 0, 4);
     }
 
     public static byte[] readNBytes(InputStream in, int len) throws IOException {
@@ -277,4 +297,32 @@ public final class WebPUtils {
         }
     }
 
+    // Buffer readers are independent of the buffer byte order, they throw BufferUnderflowException at the limit
+
+    public static byte[] readFourCC(ByteBuffer in) {
+        byte[] buf = new byte[4];
+        in.get(buf);
+        return buf;
+    }
+
+    public static int readUInt16(ByteBuffer in) {
+        return (in.get() & 0xFF) | (in.get() & 0xFF) << 8;
+    }
+
+    public static int readUInt24(ByteBuffer in) {
+        return (in.get() & 0xFF) | (in.get() & 0xFF) << 8 | (in.get() & 0xFF) << 16;
+    }
+
+    public static int readInt32(ByteBuffer in) {
+        return (in.get() & 0xFF) | (in.get() & 0xFF) << 8 | (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 24;
+    }
+
+    public static long readUInt32(ByteBuffer in) {
+        return toUInt32(readInt32(in));
+    }
+
+    public static int read1Based(ByteBuffer in) {
+        return readUInt24(in) + 1;
+    }
+
 }
@@ -2,6 +2,7 @@ module AetherJFX.ImageDecoder.WebP {
     requires java.desktop;
     requires javafx.graphics;
     requires com.sun.jna;
+    requires jdk.jfr;
 
     exports javafx.iio.plugin.webp;
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package javafx.iio.plugin.webp;
+
+import com.sun.jna.Library;
+import com.sun.jna.NativeLibrary;
+import javafx.iio.plugin.webp.jna.WebP;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Foreign Function &amp; Memory backend. Direct buffers are handed to libwebp as memory segments without copying,
+ * native results are freed when the arena of the call is closed. Symbols are looked up in the library loaded by JNA,
+ * so both backends always call the same libwebp.
+ */
+final class WebPFFM {
+
+    private static final StructLayout RGBA_BUFFER = MemoryLayout.structLayout(
+            ADDRESS.withName("rgba"),
+            JAVA_INT.withName("stride"),
+            MemoryLayout.paddingLayout(4),
+            JAVA_LONG.withName("size")
+    );
+
+    private static final StructLayout YUVA_BUFFER = MemoryLayout.structLayout(
+            MemoryLayout.sequenceLayout(4, ADDRESS).withName("planes"),
+            MemoryLayout.sequenceLayout(4, JAVA_INT).withName("strides"),
+            MemoryLayout.sequenceLayout(4, JAVA_LONG).withName("sizes")
+    );
+
+    // struct WebPDecoderConfig from decode.h
+    private static final StructLayout DECODER_CONFIG = MemoryLayout.structLayout(
+            MemoryLayout.structLayout(
+                    JAVA_INT.withName("width"),
+                    JAVA_INT.withName("height"),
+                    JAVA_INT.withName("has_alpha"),
+                    JAVA_INT.withName("has_animation"),
+                    JAVA_INT.withName("format"),
+                    MemoryLayout.sequenceLayout(5, JAVA_INT).withName("pad")
+            ).withName("input"),
+            MemoryLayout.structLayout(
+                    JAVA_INT.withName("colorspace"),
+                    JAVA_INT.withName("width"),
+                    JAVA_INT.withName("height"),
+                    JAVA_INT.withName("is_external_memory"),
+                    MemoryLayout.unionLayout(RGBA_BUFFER.withName("RGBA"), YUVA_BUFFER.withName("YUVA")).withName("u"),
+                    MemoryLayout.sequenceLayout(4, JAVA_INT).withName("pad"),
+                    ADDRESS.withName("private_memory")
+            ).withName("output"),
+            MemoryLayout.structLayout(
+                    JAVA_INT.withName("bypass_filtering"),
+                    JAVA_INT.withName("no_fancy_upsampling"),
+                    JAVA_INT.withName("use_cropping"),
+                    JAVA_INT.withName("crop_left"),
+                    JAVA_INT.withName("crop_top"),
+                    JAVA_INT.withName("crop_width"),
+                    JAVA_INT.withName("crop_height"),
+                    JAVA_INT.withName("use_scaling"),
+                    JAVA_INT.withName("scaled_width"),
+                    JAVA_INT.withName("scaled_height"),
+                    JAVA_INT.withName("use_threads"),
+                    JAVA_INT.withName("dithering_strength"),
+                    JAVA_INT.withName("flip"),
+                    JAVA_INT.withName("alpha_dithering_strength"),
+                    MemoryLayout.sequenceLayout(5, JAVA_INT).withName("pad")
+            ).withName("options"),
+            MemoryLayout.paddingLayout(4)
+    );
+
+    private static final long OUTPUT_COLORSPACE = offset("output", "colorspace");
+    private static final long OUTPUT_WIDTH = offset("output", "width");
+    private static final long OUTPUT_HEIGHT = offset("output", "height");
+    private static final long OUTPUT_IS_EXTERNAL_MEMORY = offset("output", "is_external_memory");
+    private static final long OUTPUT_RGBA = DECODER_CONFIG.byteOffset(groupElement("output"), groupElement("u"), groupElement("RGBA"), groupElement("rgba"));
+    private static final long OUTPUT_STRIDE = DECODER_CONFIG.byteOffset(groupElement("output"), groupElement("u"), groupElement("RGBA"), groupElement("stride"));
+    private static final long OUTPUT_SIZE = DECODER_CONFIG.byteOffset(groupElement("output"), groupElement("u"), groupElement("RGBA"), groupElement("size"));
+    private static final long OPTIONS_USE_CROPPING = offset("options", "use_cropping");
+    private static final long OPTIONS_CROP_LEFT = offset("options", "crop_left");
+    private static final long OPTIONS_CROP_TOP = offset("options", "crop_top");
+    private static final long OPTIONS_CROP_WIDTH = offset("options", "crop_width");
+    private static final long OPTIONS_CROP_HEIGHT = offset("options", "crop_height");
+    private static final long OPTIONS_USE_SCALING = offset("options", "use_scaling");
+    private static final long OPTIONS_SCALED_WIDTH = offset("options", "scaled_width");
+    private static final long OPTIONS_SCALED_HEIGHT = offset("options", "scaled_height");
+    private static final long OPTIONS_USE_THREADS = offset("options", "use_threads");
+
+    private WebPFFM() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static long offset(String struct, String field) {
+        return DECODER_CONFIG.byteOffset(groupElement(struct), groupElement(field));
+    }
+
+    static boolean isAvailable() {
+        try {
+            return Natives.FREE != null;
+        } catch (LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    static boolean getInfo(ByteBuffer data, int[] size) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = segment(data, arena);
+            MemorySegment dimensions = arena.allocate(8, 4);
+            int result = (int) Natives.GET_INFO.invokeExact(in, in.byteSize(), dimensions, dimensions.asSlice(4));
+            size[0] = dimensions.get(JAVA_INT, 0);
+            size[1] = dimensions.get(JAVA_INT, 4);
+            return result != 0;
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean decodeInto(int colorspace, ByteBuffer data, ByteBuffer output, int stride) {
+        MethodHandle handle = switch (colorspace) {
+            case WebP.MODE_RGBA -> Natives.DECODE_RGBA_INTO;
+            case WebP.MODE_ARGB -> Natives.DECODE_ARGB_INTO;
+            case WebP.MODE_BGRA -> Natives.DECODE_BGRA_INTO;
+            case WebP.MODE_RGB -> Natives.DECODE_RGB_INTO;
+            case WebP.MODE_BGR -> Natives.DECODE_BGR_INTO;
+            default -> throw new IllegalArgumentException("Unsupported colorspace: " + colorspace);
+        };
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = segment(data, arena);
+            MemorySegment out = MemorySegment.ofBuffer(output);
+            MemorySegment result = (MemorySegment) handle.invokeExact(in, in.byteSize(), out, out.byteSize(), stride);
+            return !result.equals(MemorySegment.NULL);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Advanced decoding API into caller-owned {@code output}, returns the VP8 status code and the output size
+     */
+    static int decode(ByteBuffer data, int colorspace, WebPDecodeOptions options, ByteBuffer output, int stride, int[] size) throws IOException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment config = arena.allocate(DECODER_CONFIG);
+            if ((int) Natives.INIT_DECODER_CONFIG.invokeExact(config, WebP.WEBP_DECODER_ABI_VERSION) == 0) {
+                throw new IOException("Incompatible libwebp decoder version");
+            }
+            if (options.isCropping()) {
+                config.set(JAVA_INT, OPTIONS_USE_CROPPING, 1);
+                config.set(JAVA_INT, OPTIONS_CROP_LEFT, options.getCrop().x());
+                config.set(JAVA_INT, OPTIONS_CROP_TOP, options.getCrop().y());
+                config.set(JAVA_INT, OPTIONS_CROP_WIDTH, options.getCrop().width());
+                config.set(JAVA_INT, OPTIONS_CROP_HEIGHT, options.getCrop().height());
+            }
+            if (options.isScaling()) {
+                config.set(JAVA_INT, OPTIONS_USE_SCALING, 1);
+                config.set(JAVA_INT, OPTIONS_SCALED_WIDTH, options.getScaledWidth());
+                config.set(JAVA_INT, OPTIONS_SCALED_HEIGHT, options.getScaledHeight());
+            }
+            config.set(JAVA_INT, OPTIONS_USE_THREADS, options.isMultiThreaded() ? 1 : 0);
+            MemorySegment out = MemorySegment.ofBuffer(output);
+            config.set(JAVA_INT, OUTPUT_COLORSPACE, colorspace);
+            config.set(JAVA_INT, OUTPUT_IS_EXTERNAL_MEMORY, 1);
+            config.set(ADDRESS, OUTPUT_RGBA, out);
+            config.set(JAVA_INT, OUTPUT_STRIDE, stride);
+            config.set(JAVA_LONG, OUTPUT_SIZE, out.byteSize());
+            MemorySegment in = segment(data, arena);
+            int status = (int) Natives.DECODE.invokeExact(in, in.byteSize(), config);
+            size[0] = config.get(JAVA_INT, OUTPUT_WIDTH);
+            size[1] = config.get(JAVA_INT, OUTPUT_HEIGHT);
+            return status;
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Encodes with the simple API, {@code stride} is in bytes and a negative {@code quality} selects lossless encoding.
+     * {@code reader} receives the encoded RIFF container before libwebp frees it.
+     */
+    static <R> R encode(int colorspace, byte[] pixels, int width, int height, int stride, float quality, Function<ByteBuffer, R> reader) {
+        boolean lossless = quality < 0;
+        MethodHandle handle = switch (colorspace) {
+            case WebP.MODE_RGB -> lossless ? Natives.ENCODE_LOSSLESS_RGB : Natives.ENCODE_RGB;
+            case WebP.MODE_BGR -> lossless ? Natives.ENCODE_LOSSLESS_BGR : Natives.ENCODE_BGR;
+            case WebP.MODE_RGBA -> lossless ? Natives.ENCODE_LOSSLESS_RGBA : Natives.ENCODE_RGBA;
+            default -> throw new IllegalArgumentException("Unsupported colorspace: " + colorspace);
+        };
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = arena.allocate(pixels.length);
+            MemorySegment.copy(pixels, 0, in, JAVA_BYTE, 0, pixels.length);
+            return encode(handle, lossless, in, width, height, stride, quality, arena, reader);
+        }
+    }
+
+    static <R> R encode(int[] bgra, int width, int height, int stride, float quality, Function<ByteBuffer, R> reader) {
+        boolean lossless = quality < 0;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = arena.allocate(4L * bgra.length, 4);
+            MemorySegment.copy(bgra, 0, in, JAVA_INT, 0, bgra.length);
+            return encode(lossless ? Natives.ENCODE_LOSSLESS_BGRA : Natives.ENCODE_BGRA, lossless, in, width, height, stride, quality, arena, reader);
+        }
+    }
+
+    private static <R> R encode(MethodHandle handle, boolean lossless, MemorySegment in, int width, int height, int stride, float quality,
+                                Arena arena, Function<ByteBuffer, R> reader) {
+        try {
+            MemorySegment outputRef = arena.allocate(ADDRESS);
+            long outputSize = lossless
+                    ? (long) handle.invokeExact(in, width, height, stride, outputRef)
+                    : (long) handle.invokeExact(in, width, height, stride, quality, outputRef);
+            if (outputSize == 0) throw new IllegalStateException("Unable to encode WebP image");
+            MemorySegment output = outputRef.get(ADDRESS, 0).reinterpret(outputSize, arena, WebPFFM::free);
+            return reader.apply(output.asByteBuffer());
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static void free(MemorySegment segment) {
+        try {
+            Natives.FREE.invokeExact(segment);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // Heap buffers can not be passed to native code, they are copied into the arena
+    private static MemorySegment segment(ByteBuffer data, Arena arena) {
+        MemorySegment segment = MemorySegment.ofBuffer(data);
+        if (segment.isNative()) return segment;
+        return arena.allocate(segment.byteSize()).copyFrom(segment);
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException e) return e;
+        if (t instanceof Error e) throw e;
+        return new IllegalStateException(t);
+    }
+
+    // Linked on first use, any failure leaves the backend unavailable
+    private static final class Natives {
+
+        private static final Linker LINKER = Linker.nativeLinker();
+        private static final SymbolLookup LOOKUP = lookup();
+
+        static final MethodHandle GET_INFO = downcall("WebPGetInfo", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS, ADDRESS));
+        static final MethodHandle DECODE_RGBA_INTO = downcall("WebPDecodeRGBAInto", decodeInto());
+        static final MethodHandle DECODE_ARGB_INTO = downcall("WebPDecodeARGBInto", decodeInto());
+        static final MethodHandle DECODE_BGRA_INTO = downcall("WebPDecodeBGRAInto", decodeInto());
+        static final MethodHandle DECODE_RGB_INTO = downcall("WebPDecodeRGBInto", decodeInto());
+        static final MethodHandle DECODE_BGR_INTO = downcall("WebPDecodeBGRInto", decodeInto());
+        static final MethodHandle INIT_DECODER_CONFIG = downcall("WebPInitDecoderConfigInternal", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
+        static final MethodHandle DECODE = downcall("WebPDecode", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS));
+        static final MethodHandle ENCODE_RGB = downcall("WebPEncodeRGB", encode());
+        static final MethodHandle ENCODE_BGR = downcall("WebPEncodeBGR", encode());
+        static final MethodHandle ENCODE_RGBA = downcall("WebPEncodeRGBA", encode());
+        static final MethodHandle ENCODE_BGRA = downcall("WebPEncodeBGRA", encode());
+        static final MethodHandle ENCODE_LOSSLESS_RGB = downcall("WebPEncodeLosslessRGB", encodeLossless());
+        static final MethodHandle ENCODE_LOSSLESS_BGR = downcall("WebPEncodeLosslessBGR", encodeLossless());
+        static final MethodHandle ENCODE_LOSSLESS_RGBA = downcall("WebPEncodeLosslessRGBA", encodeLossless());
+        static final MethodHandle ENCODE_LOSSLESS_BGRA = downcall("WebPEncodeLosslessBGRA", encodeLossless());
+        static final MethodHandle FREE = downcall("WebPFree", FunctionDescriptor.ofVoid(ADDRESS));
+
+        private static SymbolLookup lookup() {
+            NativeLibrary library = ((Library.Handler) Proxy.getInvocationHandler(WebP.INSTANCE)).getNativeLibrary();
+            File file = library.getFile();
+            return file != null
+                    ? SymbolLookup.libraryLookup(file.toPath(), Arena.global())
+                    : SymbolLookup.libraryLookup(System.mapLibraryName(library.getName()), Arena.global());
+        }
+
+        private static MethodHandle downcall(String name, FunctionDescriptor descriptor) {
+            return LINKER.downcallHandle(LOOKUP.find(name).orElseThrow(() -> new UnsatisfiedLinkError(name)), descriptor);
+        }
+
+        private static FunctionDescriptor decodeInto() {
+            return FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_LONG, ADDRESS, JAVA_LONG, JAVA_INT);
+        }
+
+        private static FunctionDescriptor encode() {
+            return FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_FLOAT, ADDRESS);
+        }
+
+        private static FunctionDescriptor encodeLossless() {
+            return FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS);
+        }
+    }
+}